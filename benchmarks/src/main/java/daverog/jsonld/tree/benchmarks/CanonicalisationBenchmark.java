@@ -0,0 +1,127 @@
+package daverog.jsonld.tree.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+import daverog.jsonld.tree.RdfTree;
+import daverog.jsonld.tree.RdfTreeException;
+import daverog.jsonld.tree.RdfTreeGenerator;
+
+/**
+ * Canonicalisation of a tree built from each of the fixture graphs with its
+ * children in a random order. A tree is only sorted the first time it is
+ * canonicalised, so each iteration builds a new batch of trees beforehand
+ * and each call canonicalises the next one. The score is the time taken to
+ * canonicalise the whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = CanonicalisationBenchmark.TREES)
+@Measurement(iterations = 10, batchSize = CanonicalisationBenchmark.TREES)
+@Fork(1)
+public class CanonicalisationBenchmark {
+
+	static final int TREES = 20;
+
+	@Param({"athletes", "10-creative-works", "creative-works-about-cardiff", "large"})
+	public String fixture;
+
+	private Model model;
+	private RdfTree generatedTree;
+	private final Random random = new Random(0);
+	private final List<RdfTree> trees = Lists.newArrayList();
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws RdfTreeException {
+		model = Fixtures.loadModel(fixture);
+		generatedTree = new RdfTreeGenerator().generateRdfTree(model);
+	}
+
+	@Setup(Level.Iteration)
+	public void buildTrees() {
+		trees.clear();
+		for (int i = 0; i < TREES; i++) {
+			trees.add(buildUnsortedCopy(generatedTree));
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public RdfTree canonicalise() {
+		RdfTree tree = trees.get(next++);
+		tree.canonicalise();
+		return tree;
+	}
+
+	/**
+	 * Adds the children of every node of the tree to a new tree, breadth
+	 * first as the generator does, but in a random order.
+	 */
+	private RdfTree buildUnsortedCopy(RdfTree tree) {
+		HashMap<RDFNode, Integer> mapFromChildToDepth = new HashMap<RDFNode, Integer>();
+		RdfTree copy;
+		if (tree.isList()) {
+			copy = new RdfTree(model, tree.getNameResolver(), mapFromChildToDepth, tree.getTotalResults());
+			for (RdfTree listItem : tree.getChildren()) {
+				copy.addListItem(listItem.getNode().asResource());
+			}
+		} else {
+			copy = new RdfTree(model, tree.getNameResolver(), tree.getNode(), mapFromChildToDepth);
+		}
+
+		Deque<RdfTree[]> pending = new ArrayDeque<RdfTree[]>();
+		if (tree.isList()) {
+			for (int i = 0; i < tree.getChildren().size(); i++) {
+				pending.add(new RdfTree[] {tree.getChildren().get(i), copy.getChildren().get(i)});
+			}
+		} else {
+			pending.add(new RdfTree[] {tree, copy});
+		}
+		while (!pending.isEmpty()) {
+			RdfTree[] pair = pending.removeFirst();
+			RdfTree original = pair[0];
+			RdfTree parentCopy = pair[1];
+			if (original.getType() != null) parentCopy.setType(original.getType());
+
+			List<RdfTree> children = Lists.newArrayList(original.getChildren());
+			Collections.shuffle(children, random);
+			for (RdfTree child : children) {
+				int childCount = parentCopy.getChildren().size();
+				Resource parentNode = parentCopy.getNode().asResource();
+				parentCopy.addChild(child.isInverse()
+						? model.createStatement(child.getNode().asResource(), child.getPredicate(), parentNode)
+						: model.createStatement(parentNode, child.getPredicate(), child.getNode()));
+				if (parentCopy.getChildren().size() > childCount) {
+					pending.add(new RdfTree[] {child, parentCopy.getChildren().get(childCount)});
+				}
+			}
+		}
+		return copy;
+	}
+
+}
@@ -0,0 +1,30 @@
+package daverog.jsonld.tree.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+import daverog.jsonld.tree.ModelUtils;
+
+public class Fixtures {
+
+	/**
+	 * Loads one of the library's test fixtures, by name
+	 * without its extension, as a Jena model.
+	 */
+	public static Model loadModel(String fixture) {
+		InputStream input = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + fixture + ".ttl");
+		if (input == null) throw new IllegalArgumentException("No such fixture: " + fixture);
+		try {
+			return ModelUtils.createJenaModel(IOUtils.toString(input, "UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read fixture: " + fixture, e);
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+}
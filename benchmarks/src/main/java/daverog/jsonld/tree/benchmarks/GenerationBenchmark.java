@@ -0,0 +1,73 @@
+package daverog.jsonld.tree.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+import daverog.jsonld.tree.NameResolver;
+import daverog.jsonld.tree.RdfTree;
+import daverog.jsonld.tree.RdfTreeException;
+import daverog.jsonld.tree.RdfTreeGenerator;
+import daverog.jsonld.tree.StatementIndex;
+
+/**
+ * Generation of trees, and the structures built
+ * for it, from each of the fixture graphs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+
+	@Param({"athletes", "10-creative-works", "creative-works-about-cardiff", "large"})
+	public String fixture;
+
+	private Model model;
+	private StatementIndex statementIndex;
+	private RdfTreeGenerator generator;
+
+	@Setup
+	public void setUp() {
+		model = Fixtures.loadModel(fixture);
+		statementIndex = new StatementIndex(model);
+		generator = new RdfTreeGenerator();
+	}
+
+	@Benchmark
+	public RdfTree generateRdfTree() throws RdfTreeException {
+		return generator.generateRdfTree(model);
+	}
+
+	@Benchmark
+	public RdfTree generateRdfTreeFromStatementIndex() throws RdfTreeException {
+		return generator.generateRdfTree(statementIndex);
+	}
+
+	@Benchmark
+	public StatementIndex buildStatementIndex() {
+		return new StatementIndex(model);
+	}
+
+	@Benchmark
+	public NameResolver constructNameResolver() {
+		return new NameResolver(model, Collections.<String>emptyList(), Collections.<String, String>emptyMap(),
+				RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX);
+	}
+
+}
@@ -0,0 +1,77 @@
+package daverog.jsonld.tree.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+import daverog.jsonld.tree.RdfTreeException;
+import daverog.jsonld.tree.RdfTreeGenerator;
+import daverog.jsonld.tree.ResultGraphFactory;
+
+/**
+ * Conversion of synthetic graphs to JSON-LD, sweeping the shape and size
+ * of the graph to show where conversion time grows faster than the graph.
+ *
+ * Narrow the sweep from the command line, for example:
+ * -p shape=LIST -p items=100,1000 -p sharedFraction=0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+
+	@Param({"ITEM", "LIST", "LIST_WITH_ORDER_BY_PREDICATE"})
+	public ResultGraphFactory.Shape shape;
+
+	@Param({"100", "400", "1600"})
+	public int items;
+
+	@Param({"2", "4"})
+	public int branching;
+
+	@Param({"2", "3"})
+	public int depth;
+
+	@Param({"0.0", "0.1"})
+	public double sharedFraction;
+
+	@Param({"0.0", "0.05"})
+	public double inverseLinkDensity;
+
+	private Model model;
+	private RdfTreeGenerator generator;
+
+	@Setup
+	public void setUp() {
+		model = new ResultGraphFactory()
+				.shape(shape)
+				.items(items)
+				.branching(branching)
+				.depth(depth)
+				.sharedFraction(sharedFraction)
+				.inverseLinkDensity(inverseLinkDensity)
+				.createModel();
+		generator = new RdfTreeGenerator();
+	}
+
+	@Benchmark
+	public String generateRdfTreeAsJson() throws RdfTreeException {
+		return generator.generateRdfTree(model).asJson();
+	}
+
+}
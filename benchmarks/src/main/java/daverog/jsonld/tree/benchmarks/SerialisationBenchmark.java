@@ -0,0 +1,59 @@
+package daverog.jsonld.tree.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import daverog.jsonld.tree.RdfTree;
+import daverog.jsonld.tree.RdfTreeException;
+import daverog.jsonld.tree.RdfTreeGenerator;
+
+/**
+ * Every output format, for a tree generated once from each of the fixture
+ * graphs. The tree is already canonical, as a generated tree always is, so
+ * writing it does not sort it again. See {@link CanonicalisationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialisationBenchmark {
+
+	@Param({"athletes", "10-creative-works", "creative-works-about-cardiff", "large"})
+	public String fixture;
+
+	private RdfTree tree;
+
+	@Setup
+	public void setUp() throws RdfTreeException {
+		tree = new RdfTreeGenerator().generateRdfTree(Fixtures.loadModel(fixture));
+	}
+
+	@Benchmark
+	public String asJson() {
+		return tree.asJson();
+	}
+
+	@Benchmark
+	public String asXml() {
+		return tree.asXml();
+	}
+
+	@Benchmark
+	public String asHtml() {
+		return tree.asHtml("/things?uri=");
+	}
+
+}
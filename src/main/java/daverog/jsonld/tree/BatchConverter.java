@@ -0,0 +1,316 @@
+package daverog.jsonld.tree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * Converts many models, such as the result graphs of an indexing job, to
+ * JSON, XML or HTML, generating and writing several at once on a bounded pool
+ * of threads. Converters are immutable, and are created with a {@link Builder}:
+ *
+ * <pre>
+ * BatchConverter converter = BatchConverter.builder()
+ *         .parallelism(8)
+ *         .queueDepth(32)
+ *         .build();
+ * converter.convert(models, new BatchConverter.ResultHandler() {
+ *     public void handle(BatchConverter.Result result) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ *
+ * Results are handled on the calling thread, one at a time, in the order of
+ * the models. A model that cannot be converted gives a failed result, and the
+ * rest of the batch is converted as usual.
+ *
+ * Models are taken from the batch only as results are handled, so at most the
+ * queue depth of models and their output are held at once, however long the
+ * batch. The models may be read as they are taken, such as from files, and a
+ * model that cannot be read gives a failed result too.
+ *
+ * Every model in a batch is converted by one generator, whose vocabularies
+ * are cached, so the names of the namespaces the batch shares are worked out
+ * once rather than for every model. Unless the generator options have a
+ * {@link VocabularyCache} to share between batches, each batch has its own.
+ */
+public class BatchConverter {
+
+	private final RdfTreeGeneratorOptions generatorOptions;
+	private final int parallelism;
+	private final int queueDepth;
+	private final List<String> prioritisedNamespaces;
+	private final Map<String, String> nameOverrides;
+	private final OutputCache.Format format;
+	private final String relativeUrlBase;
+	private final WriterOptions writerOptions;
+
+	private BatchConverter(Builder builder) {
+		this.generatorOptions = builder.generatorOptions;
+		this.parallelism = builder.parallelism;
+		this.queueDepth = builder.queueDepth == 0 ? 2 * builder.parallelism : builder.queueDepth;
+		this.prioritisedNamespaces = ImmutableList.copyOf(builder.prioritisedNamespaces);
+		this.nameOverrides = ImmutableMap.copyOf(builder.nameOverrides);
+		this.format = builder.format;
+		this.relativeUrlBase = builder.relativeUrlBase;
+		this.writerOptions = builder.writerOptions;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public RdfTreeGeneratorOptions getGeneratorOptions() {
+		return generatorOptions;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Converts every model, handing each result to the handler in the order of
+	 * the models. Returns once every result has been handled.
+	 *
+	 * An exception thrown by the handler stops the batch, as does an error,
+	 * rather than an exception, while converting a model. An exception thrown
+	 * while taking a model from the batch gives a failed result for that
+	 * model, so the iterator must move past it even then.
+	 */
+	public void convert(Iterable<Model> models, ResultHandler handler) throws RdfTreeException {
+		RdfTreeGenerator generator = createBatchGenerator();
+		ExecutorService executorService = Executors.newFixedThreadPool(parallelism,
+				new ThreadFactoryBuilder().setNameFormat("rdf-tree-batch-%d").setDaemon(true).build());
+		try {
+			Deque<Future<Result>> conversions = new ArrayDeque<Future<Result>>(queueDepth);
+			Iterator<Model> iterator = models.iterator();
+			for (int index = 0; iterator.hasNext(); index++) {
+				if (conversions.size() == queueDepth) handler.handle(getResult(conversions.removeFirst()));
+				Model model;
+				try {
+					model = iterator.next();
+				} catch (RuntimeException e) {
+					conversions.addLast(Futures.immediateFuture(new Result(index, null, e)));
+					continue;
+				}
+				conversions.addLast(executorService.submit(new Conversion(generator, index, model)));
+			}
+			while (!conversions.isEmpty()) {
+				handler.handle(getResult(conversions.removeFirst()));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts every model, returning the results in the order of the models.
+	 * Every output is held until the batch is converted, so for a long batch
+	 * {@link #convert(Iterable, ResultHandler)} holds less.
+	 */
+	public List<Result> convert(Iterable<Model> models) throws RdfTreeException {
+		final List<Result> results = Lists.newArrayList();
+		convert(models, new ResultHandler() {
+			public void handle(Result result) {
+				results.add(result);
+			}
+		});
+		return results;
+	}
+
+	private RdfTreeGenerator createBatchGenerator() {
+		if (generatorOptions.getVocabularyCache() != null) return new RdfTreeGenerator(generatorOptions);
+		return new RdfTreeGenerator(generatorOptions.toBuilder().vocabularyCache(new VocabularyCache()).build());
+	}
+
+	private Result getResult(Future<Result> conversion) throws RdfTreeException {
+		try {
+			return conversion.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RdfTreeException("Interrupted while converting the batch", e);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfPossible(e.getCause());
+			throw new RdfTreeException("Error while converting the batch", e.getCause());
+		}
+	}
+
+	private String generateOutput(RdfTreeGenerator generator, Model model) throws RdfTreeException {
+		switch (format) {
+			case XML: return generator.generateXml(model, prioritisedNamespaces, nameOverrides, writerOptions);
+			case HTML: return generator.generateHtml(model, relativeUrlBase, prioritisedNamespaces, nameOverrides, writerOptions);
+			default: return generator.generateJson(model, prioritisedNamespaces, nameOverrides, writerOptions);
+		}
+	}
+
+	private class Conversion implements Callable<Result> {
+		private final RdfTreeGenerator generator;
+		private final int index;
+		private final Model model;
+
+		private Conversion(RdfTreeGenerator generator, int index, Model model) {
+			this.generator = generator;
+			this.index = index;
+			this.model = model;
+		}
+
+		public Result call() {
+			try {
+				return new Result(index, generateOutput(generator, model), null);
+			} catch (RdfTreeException e) {
+				return new Result(index, null, e);
+			} catch (RuntimeException e) {
+				return new Result(index, null, e);
+			}
+		}
+	}
+
+	public interface ResultHandler {
+		void handle(Result result);
+	}
+
+	/**
+	 * The output of one model of a batch, or the reason it could not be converted.
+	 */
+	public static class Result {
+		private final int index;
+		private final String output;
+		private final Exception failure;
+
+		private Result(int index, String output, Exception failure) {
+			this.index = index;
+			this.output = output;
+			this.failure = failure;
+		}
+
+		/**
+		 * The position of the model in the batch, counting from 0
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public boolean isSuccessful() {
+			return failure == null;
+		}
+
+		/**
+		 * The output, or null if the model could not be converted
+		 */
+		public String getOutput() {
+			return output;
+		}
+
+		/**
+		 * Why the model could not be converted, or null if it was
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+	}
+
+	public static class Builder {
+		private RdfTreeGeneratorOptions generatorOptions = RdfTreeGeneratorOptions.DEFAULT;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+		private int queueDepth;
+		private List<String> prioritisedNamespaces = ImmutableList.of();
+		private Map<String, String> nameOverrides = ImmutableMap.of();
+		private OutputCache.Format format = OutputCache.Format.JSON;
+		private String relativeUrlBase;
+		private WriterOptions writerOptions = WriterOptions.DEFAULT;
+
+		private Builder() {
+		}
+
+		/**
+		 * Generates each tree with the given options. Unless they have a
+		 * {@link VocabularyCache}, each batch has one of its own.
+		 */
+		public Builder generatorOptions(RdfTreeGeneratorOptions generatorOptions) {
+			if (generatorOptions == null)
+				throw new IllegalArgumentException("The generator options cannot be null");
+			this.generatorOptions = generatorOptions;
+			return this;
+		}
+
+		/**
+		 * The number of models converted at once, which is the number of
+		 * available processors by default.
+		 */
+		public Builder parallelism(int parallelism) {
+			if (parallelism < 1)
+				throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * The number of models taken from the batch but not yet handled,
+		 * which is twice the parallelism by default.
+		 */
+		public Builder queueDepth(int queueDepth) {
+			if (queueDepth < 1)
+				throw new IllegalArgumentException("The queue depth must be at least 1: " + queueDepth);
+			this.queueDepth = queueDepth;
+			return this;
+		}
+
+		public Builder prioritisedNamespaces(List<String> prioritisedNamespaces) {
+			this.prioritisedNamespaces = prioritisedNamespaces;
+			return this;
+		}
+
+		public Builder nameOverrides(Map<String, String> nameOverrides) {
+			this.nameOverrides = nameOverrides;
+			return this;
+		}
+
+		public Builder json() {
+			this.format = OutputCache.Format.JSON;
+			return this;
+		}
+
+		public Builder xml() {
+			this.format = OutputCache.Format.XML;
+			return this;
+		}
+
+		public Builder html(String relativeUrlBase) {
+			this.format = OutputCache.Format.HTML;
+			this.relativeUrlBase = relativeUrlBase;
+			return this;
+		}
+
+		public Builder writerOptions(WriterOptions writerOptions) {
+			if (writerOptions == null)
+				throw new IllegalArgumentException("The writer options cannot be null");
+			this.writerOptions = writerOptions;
+			return this;
+		}
+
+		public BatchConverter build() {
+			return new BatchConverter(this);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package daverog.jsonld.tree;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
+/**
+ * Everything the canonical ordering of a tree's children compares, worked
+ * out once per child so that sorting never resolves a name or converts a
+ * literal. Keys compare exactly as {@link RdfTree#compareTo(RdfTree)} does.
+ */
+class ChildSortKey {
+
+	private static final int TYPE_RANK = 0;
+
+	static final Comparator<ChildSortKey> COMPARATOR = new Comparator<ChildSortKey>() {
+		public int compare(ChildSortKey first, ChildSortKey second) {
+			// Types first, then forward before inverse, literals before resources,
+			// and childless resources before resources with children
+			if (first.rank != second.rank) return first.rank < second.rank ? -1 : 1;
+			if (first.rank == TYPE_RANK) return 0;
+
+			if (first.predicate.equals(second.predicate))
+				return RdfTreeUtils.compareObjects(first.value, second.value);
+
+			if (!first.predicateName.mapped && second.predicateName.mapped) return -1;
+			if (first.predicateName.mapped && !second.predicateName.mapped) return 1;
+			return first.predicateName.name.compareTo(second.predicateName.name);
+		}
+	};
+
+	private final RdfTree child;
+	private final int rank;
+	private final Property predicate;
+	private final PredicateName predicateName;
+	private final Object value;
+
+	/**
+	 * @param predicateNames the names of predicates already resolved, which
+	 *        are the same for every child in a tree and so can be shared
+	 */
+	ChildSortKey(RdfTree child, NameResolver nameResolver, Map<Property, PredicateName> predicateNames) {
+		this(child, child.isChildlessResource(), nameResolver, predicateNames);
+	}
+
+	/**
+	 * A key for the child as it will be once it has, or no longer has,
+	 * children of its own
+	 */
+	ChildSortKey(RdfTree child, boolean childlessResource, NameResolver nameResolver, Map<Property, PredicateName> predicateNames) {
+		this.child = child;
+		this.rank = getRank(child, childlessResource);
+		this.predicate = child.getPredicate();
+
+		if (rank == TYPE_RANK) {
+			predicateName = null;
+			value = null;
+			return;
+		}
+
+		PredicateName name = predicateNames.get(predicate);
+		if (name == null) {
+			name = new PredicateName(nameResolver.hasMappedLocalName(predicate), nameResolver.getName(predicate));
+			predicateNames.put(predicate, name);
+		}
+		predicateName = name;
+
+		// Resources are not comparable, so they are compared by their string form
+		RDFNode node = child.getNode();
+		value = node.isLiteral() ? node.asLiteral().getValue() : node.toString();
+	}
+
+	private static int getRank(RdfTree child, boolean childlessResource) {
+		if (child.isType()) return TYPE_RANK;
+		return 1
+				+ (child.isInverse() ? 4 : 0)
+				+ (child.getNode().isLiteral() ? 0 : 2)
+				+ (childlessResource ? 0 : 1);
+	}
+
+	RdfTree getChild() {
+		return child;
+	}
+
+	/**
+	 * Whether the canonical order of the children these keys are for does not
+	 * depend on the order in which they were added: no two children compare as
+	 * equal, and the literal values of each predicate are all of one type, so
+	 * that they are compared consistently with one another.
+	 */
+	static boolean isStrictOrder(List<ChildSortKey> sortKeys) {
+		List<ChildSortKey> sortedKeys = Lists.newArrayList(sortKeys);
+		Collections.sort(sortedKeys, COMPARATOR);
+		Map<Property, Class<?>> valueTypes = Maps.newHashMap();
+		for (int i = 0; i < sortedKeys.size(); i++) {
+			ChildSortKey sortKey = sortedKeys.get(i);
+			if (i > 0 && COMPARATOR.compare(sortedKeys.get(i - 1), sortKey) >= 0) return false;
+			if (sortKey.rank != TYPE_RANK && sortKey.child.getNode().isLiteral()) {
+				Class<?> otherValueType = valueTypes.put(sortKey.predicate, sortKey.value.getClass());
+				if (otherValueType != null && !otherValueType.equals(sortKey.value.getClass())) return false;
+			}
+		}
+		return true;
+	}
+
+	static class PredicateName {
+		private final boolean mapped;
+		private final String name;
+
+		private PredicateName(boolean mapped, String name) {
+			this.mapped = mapped;
+			this.name = name;
+		}
+	}
+
+}
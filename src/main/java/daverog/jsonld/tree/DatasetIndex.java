@@ -0,0 +1,118 @@
+package daverog.jsonld.tree;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.core.Quad;
+import org.openjena.atlas.lib.Sink;
+import org.openjena.riot.RiotReader;
+
+/**
+ * A {@link StatementIndex} of each graph of a dataset, in which each named
+ * graph is one RDF Result: its own <code>result:this</code> and
+ * <code>result:meta</code> statements describe the tree generated from it.
+ *
+ * The graphs are indexed in a single pass over the quads, and a term used by
+ * many graphs, such as a predicate or a resource they all refer to, is held
+ * only once. Trees are generated from every graph with
+ * {@link RdfTreeGenerator#generateRdfTrees(DatasetIndex)}.
+ *
+ * Graphs are named by their URIs. The statements of the default graph, if
+ * there are any, are indexed as one more graph, named null.
+ */
+public class DatasetIndex {
+
+	private final Map<String, StatementIndex> graphs;
+
+	public DatasetIndex(Dataset dataset) {
+		StatementIndex.Terms terms = new StatementIndex.Terms();
+		Map<String, StatementIndex> graphs = Maps.newLinkedHashMap();
+
+		Model defaultModel = dataset.getDefaultModel();
+		if (!defaultModel.isEmpty()) graphs.put(null, StatementIndex.indexStatements(defaultModel, terms).build());
+		Iterator<String> names = dataset.listNames();
+		while (names.hasNext()) {
+			String name = names.next();
+			graphs.put(name, StatementIndex.indexStatements(dataset.getNamedModel(name), terms).build());
+		}
+
+		this.graphs = Collections.unmodifiableMap(graphs);
+	}
+
+	private DatasetIndex(Map<String, StatementIndex> graphs) {
+		this.graphs = Collections.unmodifiableMap(graphs);
+	}
+
+	/**
+	 * Reads an index from N-Quads as they are parsed, without building a
+	 * dataset first. N-Quads have no prefixes, so the names in the trees are
+	 * the full URIs of their terms.
+	 */
+	public static DatasetIndex readNQuads(InputStream in) {
+		return readNQuads(in, PrefixMapping.Factory.create());
+	}
+
+	/**
+	 * Reads an index from N-Quads, naming the terms of every graph with the given prefixes.
+	 */
+	public static DatasetIndex readNQuads(InputStream in, PrefixMapping prefixes) {
+		final Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefixes(prefixes);
+		final StatementIndex.Terms terms = new StatementIndex.Terms();
+		final Map<String, StatementIndex.Builder> builders = Maps.newLinkedHashMap();
+
+		RiotReader.createParserNQuads(in, new Sink<Quad>() {
+			public void send(Quad quad) {
+				String name = getGraphName(quad.getGraph());
+				StatementIndex.Builder builder = builders.get(name);
+				if (builder == null) {
+					builder = new StatementIndex.Builder(model, terms);
+					builders.put(name, builder);
+				}
+				builder.add(quad.asTriple());
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		}).parse();
+
+		Map<String, StatementIndex> graphs = Maps.newLinkedHashMap();
+		for (Map.Entry<String, StatementIndex.Builder> builder : builders.entrySet()) {
+			graphs.put(builder.getKey(), builder.getValue().build());
+		}
+		return new DatasetIndex(graphs);
+	}
+
+	private static String getGraphName(Node graph) {
+		if (Quad.isDefaultGraph(graph)) return null;
+		return graph.isURI() ? graph.getURI() : graph.toString();
+	}
+
+	/**
+	 * The names of the graphs, in the order they were found
+	 */
+	public Set<String> getGraphNames() {
+		return graphs.keySet();
+	}
+
+	public StatementIndex getGraph(String name) {
+		return graphs.get(name);
+	}
+
+	public int size() {
+		return graphs.size();
+	}
+
+}
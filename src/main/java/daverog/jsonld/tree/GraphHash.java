@@ -0,0 +1,172 @@
+package daverog.jsonld.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * A 128 bit hash of the statements and prefixes of a model, which is the
+ * same for any two models that differ only in the labels of their blank
+ * nodes, or in the order their statements were added.
+ *
+ * Each blank node is hashed by the statements it is part of, repeatedly
+ * including the hashes of the blank nodes around it, until no more blank
+ * nodes can be told apart. When every blank node ends up with a hash of its
+ * own, the hashes pair the blank nodes of two models with equal hashes, so
+ * the models are the same but for their labels. Otherwise models that are
+ * not the same could hash the same, such as two rings of three identical
+ * blank nodes and one ring of six, so such a model has no hash.
+ */
+final class GraphHash {
+
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+	private static final HashCode BLANK_NODE = HASH_FUNCTION.hashString("_:");
+
+	private final Map<Node, HashCode> termHashes = Maps.newHashMap();
+	private Map<Node, HashCode> blankNodeHashes = Maps.newHashMap();
+
+	private GraphHash() {
+	}
+
+	/**
+	 * Returns the hash of the model, or null if some of its blank nodes
+	 * cannot be told apart.
+	 */
+	static HashCode hash(Model model) {
+		return new GraphHash().hashModel(model);
+	}
+
+	private HashCode hashModel(Model model) {
+		List<Statement> statements = Lists.newArrayList();
+		StmtIterator iterator = model.listStatements();
+		while (iterator.hasNext()) {
+			Statement statement = iterator.nextStatement();
+			statements.add(statement);
+			if (statement.getSubject().isAnon()) blankNodeHashes.put(statement.getSubject().asNode(), BLANK_NODE);
+			if (statement.getObject().isAnon()) blankNodeHashes.put(statement.getObject().asNode(), BLANK_NODE);
+		}
+
+		int distinctHashes = 1;
+		while (!blankNodeHashes.isEmpty()) {
+			refineBlankNodeHashes(statements);
+			int refinedDistinctHashes = Sets.newHashSet(blankNodeHashes.values()).size();
+			if (refinedDistinctHashes == blankNodeHashes.size()) break;
+			if (refinedDistinctHashes == distinctHashes) return null;
+			distinctHashes = refinedDistinctHashes;
+		}
+
+		Sum sum = new Sum();
+		for (Statement statement : statements) {
+			sum.add(HASH_FUNCTION.newHasher()
+					.putBytes(getHash(statement.getSubject().asNode()).asBytes())
+					.putBytes(getHash(statement.getPredicate().asNode()).asBytes())
+					.putBytes(getHash(statement.getObject().asNode()).asBytes())
+					.hash());
+		}
+
+		Hasher hasher = HASH_FUNCTION.newHasher()
+				.putInt(statements.size())
+				.putLong(sum.low)
+				.putLong(sum.high);
+		SortedMap<String, String> prefixes = Maps.newTreeMap();
+		prefixes.putAll(model.getNsPrefixMap());
+		for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
+			putString(hasher, prefix.getKey());
+			putString(hasher, prefix.getValue());
+		}
+		return hasher.hash();
+	}
+
+	/**
+	 * Rehashes every blank node with the unordered sum of the hashes of the
+	 * statements it is part of, as either subject or object.
+	 */
+	private void refineBlankNodeHashes(List<Statement> statements) {
+		Map<Node, Sum> sums = Maps.newHashMap();
+		for (Statement statement : statements) {
+			Node subject = statement.getSubject().asNode();
+			Node predicate = statement.getPredicate().asNode();
+			Node object = statement.getObject().asNode();
+			if (subject.isBlank()) addNeighbour(sums, subject, 's', predicate, object);
+			if (object.isBlank()) addNeighbour(sums, object, 'o', predicate, subject);
+		}
+
+		Map<Node, HashCode> refined = Maps.newHashMapWithExpectedSize(blankNodeHashes.size());
+		for (Map.Entry<Node, HashCode> blankNode : blankNodeHashes.entrySet()) {
+			Sum sum = sums.get(blankNode.getKey());
+			refined.put(blankNode.getKey(), HASH_FUNCTION.newHasher()
+					.putBytes(blankNode.getValue().asBytes())
+					.putLong(sum.low)
+					.putLong(sum.high)
+					.hash());
+		}
+		blankNodeHashes = refined;
+	}
+
+	private void addNeighbour(Map<Node, Sum> sums, Node blankNode, char position, Node predicate, Node neighbour) {
+		Sum sum = sums.get(blankNode);
+		if (sum == null) {
+			sum = new Sum();
+			sums.put(blankNode, sum);
+		}
+		sum.add(HASH_FUNCTION.newHasher()
+				.putChar(position)
+				.putBytes(getHash(predicate).asBytes())
+				.putBytes(getHash(neighbour).asBytes())
+				.hash());
+	}
+
+	private HashCode getHash(Node node) {
+		if (node.isBlank()) return blankNodeHashes.get(node);
+
+		HashCode hash = termHashes.get(node);
+		if (hash == null) {
+			Hasher hasher = HASH_FUNCTION.newHasher();
+			if (node.isURI()) {
+				hasher.putChar('u');
+				putString(hasher, node.getURI());
+			} else {
+				hasher.putChar('l');
+				putString(hasher, node.getLiteralLexicalForm());
+				putString(hasher, node.getLiteralLanguage());
+				putString(hasher, node.getLiteralDatatypeURI() == null ? "" : node.getLiteralDatatypeURI());
+			}
+			hash = hasher.hash();
+			termHashes.put(node, hash);
+		}
+		return hash;
+	}
+
+	private static void putString(Hasher hasher, String string) {
+		hasher.putInt(string.length()).putString(string);
+	}
+
+	/**
+	 * An unordered combination of hashes, adding each half of them
+	 */
+	private static class Sum {
+		private long low;
+		private long high;
+
+		private void add(HashCode hash) {
+			ByteBuffer bytes = ByteBuffer.wrap(hash.asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+			low += bytes.getLong(0);
+			high += bytes.getLong(8);
+		}
+	}
+
+}
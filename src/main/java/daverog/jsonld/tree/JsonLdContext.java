@@ -0,0 +1,126 @@
+package daverog.jsonld.tree;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+import com.google.gson.stream.JsonWriter;
+
+import daverog.jsonld.tree.NameResolver.TypedResource;
+
+/**
+ * The @context of the JSON-LD written for a tree, rendered once from the
+ * names of its {@link NameResolver} for each indentation it is written
+ * with, and then copied into each document.
+ *
+ * The context is always the last entry of the outermost object, so it is
+ * rendered at that depth of indentation, starting with the separator
+ * that follows the entry before it.
+ */
+class JsonLdContext {
+
+	private static final String RESULTS_NAME = "results";
+
+	private final SortedMap<String, TypedResource> namedResources;
+	private final ConcurrentMap<String, String> itemContexts = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> listContexts = new ConcurrentHashMap<String, String>();
+
+	JsonLdContext(NameResolver nameResolver) {
+		namedResources = Maps.newTreeMap();
+		for (TypedResource resource : nameResolver.getMappedResources().values()) {
+			namedResources.put(nameResolver.getPrefixedName(resource.getResource()), resource);
+		}
+	}
+
+	/**
+	 * The context of a single item, or the empty string if it has no names.
+	 */
+	String getItemContext(WriterOptions options) {
+		String context = itemContexts.get(options.getIndent());
+		if (context == null) {
+			context = namedResources.isEmpty() ? "" : render(false, options);
+			itemContexts.put(options.getIndent(), context);
+		}
+		return context;
+	}
+
+	/**
+	 * The context of a list, which also names its results as the graph.
+	 */
+	String getListContext(WriterOptions options) {
+		String context = listContexts.get(options.getIndent());
+		if (context == null) {
+			context = render(true, options);
+			listContexts.put(options.getIndent(), context);
+		}
+		return context;
+	}
+
+	/**
+	 * Renders an object holding only an @id, and then the same object with the
+	 * context after it. What the second has in addition is the context, with
+	 * the separator before it.
+	 */
+	private String render(boolean list, WriterOptions options) {
+		try {
+			String withoutContext = renderObject(false, list, options);
+			String withContext = renderObject(true, list, options);
+			int end = withoutContext.lastIndexOf('"') + 1;
+			return withContext.substring(end, withContext.length() - (withoutContext.length() - end));
+		} catch (IOException e) {
+			throw new IllegalStateException("Error rendering the JSON-LD context", e);
+		}
+	}
+
+	private String renderObject(boolean withContext, boolean list, WriterOptions options) throws IOException {
+		StringWriter output = new StringWriter();
+		JsonWriter json = RdfTreeJsonWriter.createJsonWriter(output, options);
+		json.beginObject();
+		json.name("@id").value("");
+		if (withContext) {
+			json.name("@context").beginObject();
+			boolean resultsWritten = !list;
+			for (Map.Entry<String, TypedResource> entry : namedResources.entrySet()) {
+				int comparison = entry.getKey().compareTo(RESULTS_NAME);
+				if (!resultsWritten && comparison >= 0) {
+					writeResults(json);
+					resultsWritten = true;
+				}
+				if (list && comparison == 0) continue;
+				writeEntry(entry.getKey(), entry.getValue(), json);
+			}
+			if (!resultsWritten) {
+				writeResults(json);
+			}
+			json.endObject();
+		}
+		json.endObject();
+		json.flush();
+		return output.toString();
+	}
+
+	private void writeResults(JsonWriter json) throws IOException {
+		json.name(RESULTS_NAME).beginObject();
+		json.name("@id").value("@graph");
+		json.endObject();
+	}
+
+	private void writeEntry(String name, TypedResource resource, JsonWriter json) throws IOException {
+		json.name(name).beginObject();
+		json.name("@id").value(resource.getResource().getURI());
+		switch (resource.getType()) {
+			case VOCAB:
+				json.name("@type").value("@vocab");
+				break;
+			case ID:
+				json.name("@type").value("@id");
+				break;
+		}
+		json.endObject();
+	}
+
+}
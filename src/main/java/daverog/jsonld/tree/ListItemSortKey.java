@@ -0,0 +1,118 @@
+package daverog.jsonld.tree;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * The values of a list item's ordering predicate, fetched and sorted once
+ * so that comparing two items during a sort never queries the model.
+ *
+ * Values that compare as equal are held together in one group. The first
+ * value of a group (in statement order) is the one that is looked for in the
+ * other item's group, exactly as {@link RdfTreeUtils#compareTwoListsOfValues}
+ * does when it finds the values of both items in a sorted set.
+ */
+class ListItemSortKey {
+
+	static final Comparator<ListItemSortKey> COMPARATOR = new Comparator<ListItemSortKey>() {
+		public int compare(ListItemSortKey first, ListItemSortKey second) {
+			// Resources without any values for the ordering predicate are sorted in the same way as sparql would
+			// which is that they are treated as having the lowest possible value, the same for all of them.
+			if (first.groups.length == 0) return second.groups.length == 0 ? 0 : -1;
+			if (second.groups.length == 0) return 1;
+
+			int i = 0;
+			int j = 0;
+			while (i < first.groups.length && j < second.groups.length) {
+				int comparison = first.groups[i][0].compareTo(second.groups[j][0]);
+				if (comparison < 0) return -1;
+				if (comparison > 0) return 1;
+				if (!second.contains(j, first.groups[i][0].node)) return -1;
+				i++;
+				j++;
+			}
+			if (i < first.groups.length) return -1;
+			if (j < second.groups.length) return 1;
+			return 0;
+		}
+	};
+
+	private final Resource listItem;
+	private final SortValue[][] groups;
+
+	ListItemSortKey(Resource listItem, List<RDFNode> values) {
+		this.listItem = listItem;
+
+		List<SortValue> sortValues = Lists.newArrayListWithCapacity(values.size());
+		for (RDFNode value : values) {
+			sortValues.add(new SortValue(value));
+		}
+		// A stable sort keeps the statement order within each group of equal values
+		Collections.sort(sortValues);
+
+		List<SortValue[]> groupList = Lists.newArrayList();
+		int start = 0;
+		for (int i = 1; i <= sortValues.size(); i++) {
+			if (i == sortValues.size() || sortValues.get(start).compareTo(sortValues.get(i)) != 0) {
+				groupList.add(sortValues.subList(start, i).toArray(new SortValue[i - start]));
+				start = i;
+			}
+		}
+		groups = groupList.toArray(new SortValue[groupList.size()][]);
+	}
+
+	Resource getListItem() {
+		return listItem;
+	}
+
+	private boolean contains(int group, RDFNode node) {
+		for (SortValue value : groups[group]) {
+			if (value.node.equals(node)) return true;
+		}
+		return false;
+	}
+
+	private static class SortValue implements Comparable<SortValue> {
+
+		private static final int STRING = 0;
+		private static final int LITERAL = 1;
+		private static final int RESOURCE = 2;
+
+		private final RDFNode node;
+		private final Object value;
+		private final int kind;
+
+		private SortValue(RDFNode node) {
+			this.node = node;
+			if (node.isLiteral()) {
+				value = node.asLiteral().getValue();
+				kind = value instanceof String ? STRING : LITERAL;
+			} else {
+				value = node;
+				kind = RESOURCE;
+			}
+		}
+
+		//The following describes the ordering preference when sorting
+		//lists of resources by the values of their objects.
+		//
+		//The natural (Java) ordering is used, but with a preference
+		//for types of object (in order of how they would appear in
+		//a list):
+		//
+		//1: Strings
+		//2: Any other literals (ordered by toString if their types differ)
+		//3: Resources (ordered by URI)
+		public int compareTo(SortValue other) {
+			if (kind < other.kind) return -1;
+			if (kind > other.kind) return 1;
+			return RdfTreeUtils.compareObjects(value, other.value);
+		}
+	}
+
+}
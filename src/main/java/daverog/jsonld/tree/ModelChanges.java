@@ -0,0 +1,77 @@
+package daverog.jsonld.tree;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * Collects the statements added to and removed from a model since a tree was
+ * generated from it, so that the tree can be brought up to date with
+ * {@link RdfTreeGenerator#updateRdfTree(RdfTree, Model, ModelChanges)}.
+ *
+ * Register it with the model, using {@link Model#register(com.hp.hpl.jena.rdf.model.ModelChangedListener)},
+ * when the tree is generated, and {@link #clear()} it each time the tree is
+ * updated. A statement added and then removed again, or the other way round,
+ * is recorded only as its last change.
+ *
+ * Statements removed in bulk, with {@link Model#removeAll()} or
+ * {@link Model#removeAll(com.hp.hpl.jena.rdf.model.Resource, com.hp.hpl.jena.rdf.model.Property, com.hp.hpl.jena.rdf.model.RDFNode)},
+ * are not listed by the model, so after those the changes are no longer
+ * {@link #isComplete() complete}, and the tree is generated again in full.
+ */
+public class ModelChanges extends StatementListener {
+
+	private final Set<Statement> addedStatements = Sets.newLinkedHashSet();
+	private final Set<Statement> removedStatements = Sets.newLinkedHashSet();
+	private boolean complete = true;
+
+	@Override
+	public void addedStatement(Statement statement) {
+		removedStatements.remove(statement);
+		addedStatements.add(statement);
+	}
+
+	@Override
+	public void removedStatement(Statement statement) {
+		addedStatements.remove(statement);
+		removedStatements.add(statement);
+	}
+
+	@Override
+	public void notifyEvent(Model model, Object event) {
+		if (event instanceof GraphEvents && !event.equals(GraphEvents.startRead) && !event.equals(GraphEvents.finishRead)) {
+			complete = false;
+		}
+	}
+
+	public Set<Statement> getAddedStatements() {
+		return Collections.unmodifiableSet(addedStatements);
+	}
+
+	public Set<Statement> getRemovedStatements() {
+		return Collections.unmodifiableSet(removedStatements);
+	}
+
+	/**
+	 * Whether every statement added or removed is listed
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public boolean isEmpty() {
+		return complete && addedStatements.isEmpty() && removedStatements.isEmpty();
+	}
+
+	public void clear() {
+		addedStatements.clear();
+		removedStatements.clear();
+		complete = true;
+	}
+
+}
@@ -0,0 +1,62 @@
+package daverog.jsonld.tree;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.SimpleSelector;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * Queries the model directly for every node that is expanded.
+ * Used when no {@link StatementIndex} has been supplied.
+ */
+class ModelStatementSource implements StatementSource {
+
+	private final Model model;
+
+	ModelStatementSource(Model model) {
+		this.model = model;
+	}
+
+	public Model getModel() {
+		return model;
+	}
+
+	public boolean isEmpty() {
+		return model.isEmpty();
+	}
+
+	public Iterator<Statement> listStatements() {
+		return model.listStatements();
+	}
+
+	public List<Statement> getStatementsWithSubject(Resource subject) {
+		return model.listStatements(new SimpleSelector(
+				subject,
+				null,
+				(RDFNode) null)).toList();
+	}
+
+	public List<Statement> getInverseStatements(Resource object) {
+		List<Statement> inverseStatements = Lists.newArrayList();
+		StmtIterator statements = model.listStatements(new SimpleSelector(
+				null,
+				null,
+				(RDFNode) object));
+		while (statements.hasNext()) {
+			Statement statement = statements.nextStatement();
+			if (!statement.getSubject().equals(object)) inverseStatements.add(statement);
+		}
+		return inverseStatements;
+	}
+
+	public List<RDFNode> getTypes(Resource subject) {
+		return model.listObjectsOfProperty(subject, model.getProperty(RdfTree.RDF_TYPE)).toList();
+	}
+
+}
@@ -2,78 +2,115 @@ package daverog.jsonld.tree;
 
 import com.google.common.collect.*;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.rdf.model.StmtIterator;
 
-import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
 public class NameResolver {
 
-	private final Model model;
+	private final Vocabulary vocabulary;
 	private final SortedMap<String, TypedResource> mappedResources;
 	private final List<String> prioritisedNamespaces;
-	private Map<String, String> nameOverrides;
+	private final Map<String, String> nameOverrides;
 	private final String rdfResultOntologyPrefix;
+	private final boolean lazy;
+	private volatile JsonLdContext jsonLdContext;
+	private int namesVersion;
+	private boolean namesDependOnOrder;
 
 	public NameResolver(Model model, List<String> prioritisedNamespaces, Map<String,String> nameOverrides, String rdfResultOntologyPrefix) {
-		checkDuplicateNameOverrides(nameOverrides);
+		this(model, prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix, false);
+	}
+
+	/**
+	 * A lazy resolver registers no terms when it is created. Instead, terms are
+	 * registered as the nodes and statements that use them are added to a tree,
+	 * so the names (and the context) cover only what the tree reaches. Name
+	 * collisions are settled by the same rules, in the order terms are added.
+	 */
+	public NameResolver(Model model, List<String> prioritisedNamespaces, Map<String,String> nameOverrides, String rdfResultOntologyPrefix, boolean lazy) {
+		this(new ModelStatementSource(model), prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix, lazy);
+	}
 
-		this.model = model;
-		this.nameOverrides = nameOverrides;
-		this.rdfResultOntologyPrefix = rdfResultOntologyPrefix;
-		this.prioritisedNamespaces = Lists.newArrayList(RdfTree.RDF_PREFIX, RdfTree.OWL_PREFIX);
-		this.prioritisedNamespaces.addAll(prioritisedNamespaces);
+	NameResolver(StatementSource statementSource, List<String> prioritisedNamespaces, Map<String,String> nameOverrides, String rdfResultOntologyPrefix, boolean lazy) {
+		this(statementSource, new Vocabulary(new Vocabulary.Key(statementSource.getModel(), prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix), Maps.<String, Vocabulary.Term>newHashMap()), lazy);
+	}
+
+	NameResolver(StatementSource statementSource, Vocabulary vocabulary, boolean lazy) {
+		this.vocabulary = vocabulary;
+		this.lazy = lazy;
+		this.nameOverrides = vocabulary.getNameOverrides();
+		this.rdfResultOntologyPrefix = vocabulary.getRdfResultOntologyPrefix();
+		this.prioritisedNamespaces = vocabulary.getPrioritisedNamespaces();
 
 		mappedResources = Maps.newTreeMap();
 
-		StmtIterator statements = model.listStatements();
+		if (lazy) return;
+
+		Iterator<Statement> statements = statementSource.listStatements();
 		while(statements.hasNext()) {
-			Statement statement = statements.next();
+			registerTerms(statements.next());
+		}
+	}
 
-			registerResource(new TypedResource(statement.getSubject(), ResourceType.NONE));
+	/**
+	 * Registers the terms of a statement added to a tree, if this resolver is lazy.
+	 */
+	void registerStatement(Statement statement) {
+		if (lazy) registerTerms(statement);
+	}
 
-			ResourceType type = ResourceType.NONE;
-			if (statement.getObject().isResource())	{
-				Resource objectResource = statement.getObject().asResource();
-				String nameSpace = objectResource.getNameSpace();
-				if (nameSpace != null && model.getNsURIPrefix(nameSpace) != null) {
-					type = ResourceType.VOCAB;
-				} else {
-					type = ResourceType.ID;
-				}
-				registerResource(new TypedResource(objectResource, ResourceType.NONE));
-			}
+	/**
+	 * Registers a node added to a tree, if this resolver is lazy.
+	 */
+	void registerNode(RDFNode node) {
+		if (lazy && node != null && node.isResource()) registerResource(new TypedResource(node.asResource(), ResourceType.NONE));
+	}
+
+	public boolean isLazy() {
+		return lazy;
+	}
 
-			registerResource(new TypedResource(statement.getPredicate(), type));
+	private void registerTerms(Statement statement) {
+		registerResource(new TypedResource(statement.getSubject(), ResourceType.NONE));
+		if (statement.getObject().isResource())	{
+			registerResource(new TypedResource(statement.getObject().asResource(), ResourceType.NONE));
 		}
+		registerResource(new TypedResource(statement.getPredicate(), getPredicateType(statement)));
 	}
 
-	private void checkDuplicateNameOverrides(Map<String, String> nameOverrides) {
-		Map<String, Collection<String>> inverse = Multimaps.invertFrom(Multimaps.forMap(nameOverrides), HashMultimap.<String, String>create()).asMap();
-		for (Collection collection : inverse.values()) {
-			if (collection.size() > 1)
-				throw new IllegalArgumentException("A name override cannot map to multiple URIs: " + collection);
+	private ResourceType getPredicateType(Statement statement) {
+		if (!statement.getObject().isResource()) return ResourceType.NONE;
+		Resource objectResource = statement.getObject().asResource();
+		if (!objectResource.isAnon() && vocabulary.getTerm(objectResource).getPrefix() != null) {
+			return ResourceType.VOCAB;
 		}
+		return ResourceType.ID;
 	}
 
 	private void registerResource(TypedResource resource) {
-		String nameSpace = resource.getResource().getNameSpace();
+		if (resource.getResource().isAnon()) return;
+
+		Vocabulary.Term term = vocabulary.getTerm(resource.getResource());
+		String nameSpace = term.getNameSpace();
 
 		if (nameSpace != null && !nameSpace.equals(rdfResultOntologyPrefix)) {
 			String currentNamespace = nameSpace;
-			String prefix = model.getNsURIPrefix(currentNamespace);
+			String prefix = term.getPrefix();
 			if (prefix != null && currentNamespace != null) {
-				TypedResource existingResource = mappedResources.get(resource.getResource().getLocalName());
+				TypedResource existingResource = mappedResources.get(term.getLocalName());
 				if (existingResource == null) {
-					mappedResources.put(resource.getResource().getLocalName(), resource);
+					putMappedResource(term.getLocalName(), resource);
 				} else {
 					if (!resource.getResource().equals(existingResource.getResource())) {
 						boolean existingIsHigherPriorityThanCurrent= false;
-						String existingNamespace = existingResource.getResource().getNameSpace();
+						Vocabulary.Term existingTerm = vocabulary.getTerm(existingResource.getResource());
+						String existingNamespace = existingTerm.getNameSpace();
 						int priorityOfExistingResource = prioritisedNamespaces.indexOf(existingNamespace);
 						int priorityOfCurrentResource = prioritisedNamespaces.indexOf(currentNamespace);
 
@@ -88,30 +125,44 @@ public class NameResolver {
 						}
 
 						if(existingIsHigherPriorityThanCurrent) {
-							mappedResources.put(prefix + "_" + resource.getResource().getLocalName(), resource);
+							putMappedResource(prefix + "_" + term.getLocalName(), resource);
 						} else {
-							String currentPrefix = model.getNsURIPrefix(existingNamespace);
-							mappedResources.put(currentPrefix + "_" + existingResource.getResource().getLocalName(), existingResource);
-							mappedResources.put(resource.getResource().getLocalName(), resource);
+							String currentPrefix = existingTerm.getPrefix();
+							putMappedResource(currentPrefix + "_" + existingTerm.getLocalName(), existingResource);
+							putMappedResource(term.getLocalName(), resource);
 						}
+					} else if (existingResource.getType() != resource.getType()) {
+						namesDependOnOrder = true;
 					}
 				}
 			}
 		}
 	}
 
+	private void putMappedResource(String name, TypedResource resource) {
+		TypedResource existingResource = mappedResources.put(name, resource);
+		if (existingResource != null && existingResource.getResource().equals(resource.getResource()) && existingResource.getType() != resource.getType()) {
+			namesDependOnOrder = true;
+		}
+		if (existingResource == null || !existingResource.isSameAs(resource)) {
+			jsonLdContext = null;
+			namesVersion++;
+		}
+	}
+
 	public String getName(Resource resource) {
 		if (resource.isAnon()) return "@blank";
 		if (resource.getURI().equals(RdfTree.RDF_TYPE)) return "type";
 
-		TypedResource mappedResource = mappedResources.get(resource.getLocalName());
+		String localName = vocabulary.getTerm(resource).getLocalName();
+		TypedResource mappedResource = mappedResources.get(localName);
 		if (mappedResource != null && mappedResource.getResource().equals(resource)) {
-			return resource.getLocalName();
+			return localName;
 		}
 
 		String prefix = getPrefixForResourceUri(resource);
 		if (prefix != null) {
-			return prefix + "_" + resource.getLocalName();
+			return prefix + "_" + localName;
 		} else {
 			return resource.getURI();
 		}
@@ -124,25 +175,100 @@ public class NameResolver {
 
 		String prefix = getPrefixForResourceUri(resource);
 		if (prefix != null) {
-			return prefix + ":" + resource.getLocalName();
+			return prefix + ":" + vocabulary.getTerm(resource).getLocalName();
 		} else {
 			return resource.getURI();
 		}
 	}
 
 	public String getPrefixForResourceUri(Resource resource) {
-		String nameSpace = resource.getNameSpace();
+		Vocabulary.Term term = vocabulary.getTerm(resource);
+		String nameSpace = term.getNameSpace();
 
 		if (nameSpace.equals(RdfTree.RDF_PREFIX)) return "rdf";
 		if (nameSpace.equals(RdfTree.OWL_PREFIX)) return "owl";
 		if (nameOverrides.containsKey(resource.getURI())) return null;
 
-		return model.getNsURIPrefix(nameSpace);
+		return term.getPrefix();
+	}
+
+	/**
+	 * Whether any resource with the local name of this one is named, which
+	 * {@link #compareNames(Resource, Resource)} orders first by.
+	 */
+	boolean hasMappedLocalName(Resource resource) {
+		return mappedResources.get(vocabulary.getTerm(resource).getLocalName()) != null;
+	}
+
+	/**
+	 * Changes whenever registering a resource changes the names, so that anything ordered
+	 * or rendered by name can tell whether the names may have changed since.
+	 */
+	int getNamesVersion() {
+		return namesVersion;
+	}
+
+	/**
+	 * Whether registering the resource could give it a name, which it
+	 * cannot if it is a blank node or its namespace has no prefix.
+	 */
+	boolean canBeNamed(Resource resource) {
+		if (resource.isAnon()) return false;
+		Vocabulary.Term term = vocabulary.getTerm(resource);
+		return term.getNameSpace() != null && !term.getNameSpace().equals(rdfResultOntologyPrefix) && term.getPrefix() != null;
+	}
+
+	boolean isNamed(Resource resource) {
+		for (TypedResource mappedResource : mappedResources.values()) {
+			if (mappedResource.getResource().equals(resource)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Whether registering the terms of the statement would leave every name,
+	 * and the type of every named resource, as it is: each term that can be
+	 * named is named already, with the type the statement would give it.
+	 */
+	boolean wouldKeepNames(Statement statement) {
+		if (!isNamedAs(statement.getSubject(), ResourceType.NONE)) return false;
+		if (statement.getObject().isResource() && !isNamedAs(statement.getObject().asResource(), ResourceType.NONE)) return false;
+		return isNamedAs(statement.getPredicate(), getPredicateType(statement));
+	}
+
+	private boolean isNamedAs(Resource resource, ResourceType type) {
+		if (!canBeNamed(resource)) return true;
+		Vocabulary.Term term = vocabulary.getTerm(resource);
+		TypedResource mappedResource = mappedResources.get(term.getLocalName());
+		if (mappedResource == null || !mappedResource.getResource().equals(resource)) {
+			mappedResource = mappedResources.get(term.getPrefix() + "_" + term.getLocalName());
+		}
+		return mappedResource != null && mappedResource.getResource().equals(resource) && mappedResource.getType() == type;
+	}
+
+	/**
+	 * Whether some resource was registered with more than one type, so that
+	 * its type, and so the names, depend on the order in which its statements
+	 * were registered, rather than only on which statements there are.
+	 */
+	boolean namesDependOnOrder() {
+		return namesDependOnOrder;
+	}
+
+	/**
+	 * Whether the other resolver gives every resource the same name and type as this one.
+	 */
+	boolean hasSameNamesAs(NameResolver other) {
+		if (!mappedResources.keySet().equals(other.mappedResources.keySet())) return false;
+		for (Map.Entry<String, TypedResource> mappedResource : mappedResources.entrySet()) {
+			if (!mappedResource.getValue().isSameAs(other.mappedResources.get(mappedResource.getKey()))) return false;
+		}
+		return true;
 	}
 
 	public int compareNames(Resource resource, Resource otherResource) {
-		TypedResource mappedResource = mappedResources.get(resource.getLocalName());
-		TypedResource otherMappedResource = mappedResources.get(otherResource.getLocalName());
+		TypedResource mappedResource = mappedResources.get(vocabulary.getTerm(resource).getLocalName());
+		TypedResource otherMappedResource = mappedResources.get(vocabulary.getTerm(otherResource).getLocalName());
 
 		if (mappedResource == null && otherMappedResource != null) return -1;
 		if (mappedResource != null && otherMappedResource == null) return 1;
@@ -150,6 +276,19 @@ public class NameResolver {
 		return getName(resource).compareTo(getName(otherResource));
 	}
 
+	/**
+	 * The JSON-LD context for these names, created when first needed and
+	 * created again only if more names are registered.
+	 */
+	JsonLdContext getJsonLdContext() {
+		JsonLdContext context = jsonLdContext;
+		if (context == null) {
+			context = new JsonLdContext(this);
+			jsonLdContext = context;
+		}
+		return context;
+	}
+
 	public SortedMap<String, TypedResource> getMappedResources() {
 		return mappedResources;
 	}
@@ -170,6 +309,10 @@ public class NameResolver {
 		public ResourceType getType() {
 			return type;
 		}
+
+		private boolean isSameAs(TypedResource other) {
+			return resource.equals(other.resource) && type == other.type;
+		}
 	}
 
 	protected enum ResourceType {
@@ -0,0 +1,146 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A thread-safe cache of the JSON, XML and HTML generated from models, shared
+ * by generators and requests. Output is found by a hash of the statements
+ * and prefixes of the model, which ignores the labels of blank nodes, along
+ * with every setting that affects it, so a model converted before is
+ * neither generated nor written again. A model with blank nodes that the
+ * hash cannot tell apart, such as identical blank nodes in a ring, is
+ * converted every time rather than risk finding the output of another.
+ *
+ * The least recently used output is evicted once the outputs together
+ * exceed the maximum size, measured as the bytes their characters occupy.
+ */
+public class OutputCache {
+
+	public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+	enum Format {
+		JSON,
+		XML,
+		HTML
+	}
+
+	private final Cache<Key, String> outputs;
+
+	public OutputCache() {
+		this(DEFAULT_MAXIMUM_BYTES);
+	}
+
+	public OutputCache(long maximumBytes) {
+		outputs = CacheBuilder.newBuilder()
+				.maximumWeight(maximumBytes)
+				.weigher(new Weigher<Key, String>() {
+					public int weigh(Key key, String output) {
+						return (int) Math.min(Integer.MAX_VALUE, 2L * output.length());
+					}
+				})
+				.build();
+	}
+
+	/**
+	 * Returns the output for the key, generating and caching it if
+	 * it is not cached already.
+	 */
+	String get(Key key, Callable<String> generator) throws RdfTreeException {
+		try {
+			return outputs.get(key, generator);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), RdfTreeException.class);
+			throw Throwables.propagate(e.getCause());
+		} catch (UncheckedExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	public long hitCount() {
+		return outputs.stats().hitCount();
+	}
+
+	public long missCount() {
+		return outputs.stats().missCount();
+	}
+
+	public long size() {
+		return outputs.size();
+	}
+
+	public void invalidateAll() {
+		outputs.invalidateAll();
+	}
+
+	/**
+	 * The model, and everything else that affects what is generated from it.
+	 */
+	static class Key {
+		private final HashCode graphHash;
+		private final String resultOntologyPrefix;
+		private final boolean lazyNameResolution;
+		private final int maximumNodes;
+		private final int offset;
+		private final int limit;
+		private final List<String> prioritisedNamespaces;
+		private final Map<String, String> nameOverrides;
+		private final Format format;
+		private final String relativeUrlBase;
+		private final String indent;
+
+		Key(HashCode graphHash, RdfTreeGeneratorOptions options, List<String> prioritisedNamespaces, Map<String, String> nameOverrides,
+				int offset, int limit, Format format, String relativeUrlBase, WriterOptions writerOptions) {
+			this.graphHash = graphHash;
+			this.resultOntologyPrefix = options.getResultOntologyPrefix();
+			this.lazyNameResolution = options.isLazyNameResolution();
+			this.maximumNodes = options.getMaximumNodes();
+			this.offset = offset;
+			this.limit = limit;
+			this.prioritisedNamespaces = ImmutableList.copyOf(prioritisedNamespaces);
+			this.nameOverrides = ImmutableMap.copyOf(nameOverrides);
+			this.format = format;
+			this.relativeUrlBase = relativeUrlBase;
+			this.indent = writerOptions.getIndent();
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(graphHash, resultOntologyPrefix, lazyNameResolution, maximumNodes, offset, limit,
+					prioritisedNamespaces, nameOverrides, format, relativeUrlBase, indent);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return graphHash.equals(other.graphHash)
+					&& resultOntologyPrefix.equals(other.resultOntologyPrefix)
+					&& lazyNameResolution == other.lazyNameResolution
+					&& maximumNodes == other.maximumNodes
+					&& offset == other.offset
+					&& limit == other.limit
+					&& prioritisedNamespaces.equals(other.prioritisedNamespaces)
+					&& nameOverrides.equals(other.nameOverrides)
+					&& format == other.format
+					&& Objects.equal(relativeUrlBase, other.relativeUrlBase)
+					&& indent.equals(other.indent);
+		}
+	}
+
+}
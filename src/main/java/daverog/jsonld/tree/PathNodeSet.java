@@ -0,0 +1,112 @@
+package daverog.jsonld.tree;
+
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
+/**
+ * An immutable set of the nodes on the path from the root of a tree to one of
+ * its nodes. Adding a node gives a new set that shares all but a few entries
+ * with the old one, so every node of a tree can hold the set of its own path
+ * without copying its parent's.
+ *
+ * The set is a hash trie: each level is indexed by five bits of the hash of a
+ * node, so finding a node takes at most seven steps, however long the path.
+ * Nodes whose hashes are the same in every bit are held together in one slot.
+ */
+final class PathNodeSet {
+
+	static final PathNodeSet EMPTY = new PathNodeSet(0, new Object[0]);
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private final int bitmap;
+	private final Object[] slots;
+
+	private PathNodeSet(int bitmap, Object[] slots) {
+		this.bitmap = bitmap;
+		this.slots = slots;
+	}
+
+	boolean contains(RDFNode node) {
+		int hash = hash(node);
+		PathNodeSet set = this;
+		for (int shift = 0; ; shift += BITS) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((set.bitmap & bit) == 0) return false;
+			Object slot = set.slots[Integer.bitCount(set.bitmap & (bit - 1))];
+			if (slot instanceof PathNodeSet) {
+				set = (PathNodeSet) slot;
+			} else if (slot instanceof Collision) {
+				return ((Collision) slot).contains(node);
+			} else {
+				return slot.equals(node);
+			}
+		}
+	}
+
+	/**
+	 * This set with the node added, or this set if it holds the node already
+	 */
+	PathNodeSet with(RDFNode node) {
+		if (contains(node)) return this;
+		return with(node, hash(node), 0);
+	}
+
+	private PathNodeSet with(RDFNode node, int hash, int shift) {
+		int bit = 1 << ((hash >>> shift) & MASK);
+		int index = Integer.bitCount(bitmap & (bit - 1));
+		if ((bitmap & bit) == 0) {
+			Object[] newSlots = new Object[slots.length + 1];
+			System.arraycopy(slots, 0, newSlots, 0, index);
+			newSlots[index] = node;
+			System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+			return new PathNodeSet(bitmap | bit, newSlots);
+		}
+
+		Object slot = slots[index];
+		Object newSlot;
+		if (slot instanceof PathNodeSet) {
+			newSlot = ((PathNodeSet) slot).with(node, hash, shift + BITS);
+		} else if (slot instanceof Collision) {
+			newSlot = ((Collision) slot).with(node);
+		} else if (hash((RDFNode) slot) == hash) {
+			newSlot = new Collision(new RDFNode[] {(RDFNode) slot, node});
+		} else {
+			newSlot = EMPTY.with((RDFNode) slot, hash((RDFNode) slot), shift + BITS).with(node, hash, shift + BITS);
+		}
+		Object[] newSlots = slots.clone();
+		newSlots[index] = newSlot;
+		return new PathNodeSet(bitmap, newSlots);
+	}
+
+	private static int hash(RDFNode node) {
+		int hash = node.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * The nodes of one slot whose hashes are the same
+	 */
+	private static final class Collision {
+		private final RDFNode[] nodes;
+
+		private Collision(RDFNode[] nodes) {
+			this.nodes = nodes;
+		}
+
+		private boolean contains(RDFNode node) {
+			for (RDFNode other : nodes) {
+				if (other.equals(node)) return true;
+			}
+			return false;
+		}
+
+		private Collision with(RDFNode node) {
+			RDFNode[] newNodes = new RDFNode[nodes.length + 1];
+			System.arraycopy(nodes, 0, newNodes, 0, nodes.length);
+			newNodes[nodes.length] = node;
+			return new Collision(newNodes);
+		}
+	}
+
+}
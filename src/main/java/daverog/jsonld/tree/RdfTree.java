@@ -1,10 +1,20 @@
 package daverog.jsonld.tree;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
@@ -20,76 +30,134 @@ public class RdfTree implements Comparable<RdfTree> {
 	public static final String OWL_PREFIX = "http://www.w3.org/2002/07/owl#";
 
 	private final RdfTree parent;
-	private List<RdfTree> children = Lists.newArrayList();
+	private final Context context;
+	private final int depth;
+	private ArrayList<RdfTree> children = null;
+	private volatile PathNodeSet pathNodes = null;
 
 	private final boolean inverse;
 	private final boolean list;
 	private final RDFNode node;
 	private final Property predicate;
-	private final Model model;
-	private final NameResolver nameResolver;
 	private Resource type;
-	HashMap<RDFNode, Integer> mapFromChildToDepth = null;
 	private boolean constructed = false;
-    private Integer totalResults = null;
+	private boolean canonical = false;
+	private int canonicalNamesVersion;
+
+	/**
+	 * What every node of a tree shares, held once by the tree rather than by
+	 * each of its nodes. Large lists have hundreds of thousands of nodes, most
+	 * of them literal leaves, so a node holds only what is its own, and a leaf
+	 * has no list of children.
+	 */
+	private static class Context {
+		private final Model model;
+		private final NameResolver nameResolver;
+		private final HashMap<RDFNode, Integer> mapFromChildToDepth;
+		private final RdfTree root;
+		private final Set<RDFNode> listItemNodes;
+		private final Integer totalResults;
+		private RdfTreeUpdate.TreeIndex updateIndex;
+
+		private Context(Model model, NameResolver nameResolver, HashMap<RDFNode, Integer> mapFromChildToDepth, RdfTree root, Set<RDFNode> listItemNodes, Integer totalResults) {
+			this.model = model;
+			this.nameResolver = nameResolver;
+			this.mapFromChildToDepth = mapFromChildToDepth;
+			this.root = root;
+			this.listItemNodes = listItemNodes;
+			this.totalResults = totalResults;
+		}
+
+		private boolean isSharedBy(Model model, NameResolver nameResolver, HashMap<RDFNode, Integer> mapFromChildToDepth) {
+			return this.model == model && this.nameResolver == nameResolver && this.mapFromChildToDepth == mapFromChildToDepth;
+		}
+	}
 
 	public RdfTree(Model model, NameResolver nameResolver, RdfTree parent, RDFNode node, Property predicate, boolean inverse, HashMap<RDFNode, Integer> mapFromChildToDepth) {
-		this.model = model;
-		this.nameResolver = nameResolver;
 		this.parent = parent;
 		this.node = node;
 		this.predicate = predicate;
 		this.inverse = inverse;
-		this.mapFromChildToDepth = mapFromChildToDepth;
 		list = false;
+		if (parent == null) {
+			context = new Context(model, nameResolver, mapFromChildToDepth, this, null, null);
+		} else if (parent.context.isSharedBy(model, nameResolver, mapFromChildToDepth)) {
+			context = parent.context;
+		} else {
+			context = new Context(model, nameResolver, mapFromChildToDepth, parent.context.root, null, null);
+		}
+		depth = calculateDepth();
 	}
 
 	public RdfTree(Model model, NameResolver nameResolver, RDFNode rootNode, HashMap<RDFNode, Integer> mapFromChildToDepth) {
-		this.model = model;
-		this.nameResolver = nameResolver;
 		this.node = rootNode;
-		this.mapFromChildToDepth = mapFromChildToDepth;
 		list = false;
 		predicate = null;
 		inverse = false;
 		parent = null;
+		context = new Context(model, nameResolver, mapFromChildToDepth, this, null, null);
+		depth = calculateDepth();
+		nameResolver.registerNode(rootNode);
 	}
 
 	public RdfTree(Model model, NameResolver nameResolver, HashMap<RDFNode, Integer> mapFromChildToDepth, Integer totalResults) {
-		this.model = model;
-		this.nameResolver = nameResolver;
-		this.mapFromChildToDepth = mapFromChildToDepth;
 		list = true;
 		predicate = null;
 		inverse = false;
 		parent = null;
 		node = null;
-        this.totalResults = totalResults;
+		context = new Context(model, nameResolver, mapFromChildToDepth, this, Sets.<RDFNode>newHashSet(), totalResults);
+		depth = calculateDepth();
 	}
 
 	public void addChild(Statement statement) {
-		RDFNode childNode = statement.getSubject();
-		boolean inverse = true;
-		if (statement.getSubject().equals(node)) {
-			childNode = statement.getObject();
-			inverse = false;
-		}
+		if (canFollow(statement)) addFollowedChild(statement);
+	}
+
+	private boolean isInverse(Statement statement) {
+		return !statement.getSubject().equals(node);
+	}
+
+	private RDFNode getChildNode(Statement statement) {
+		return isInverse(statement) ? statement.getSubject() : statement.getObject();
+	}
+
+	/**
+	 * Checks rules 1 to 4, which depend only on the path from the root
+	 * to this tree and on the items of the list. Neither changes while a tree
+	 * is being expanded, so the rules can be checked for many trees concurrently.
+	 */
+	boolean canFollow(Statement statement) {
+		RDFNode childNode = getChildNode(statement);
+		boolean inverse = isInverse(statement);
 
 		//Rule 1: Do not follow inverse type predicates.
 		//This prevents commonly typed resources in a graph from creating overly large tree
-		if (inverse && statement.getPredicate().getURI().equals(RDF_TYPE)) return;
+		if (inverse && statement.getPredicate().getURI().equals(RDF_TYPE)) return false;
 
 		//Rule 2: If a node is present as a parent node, do not continue with more children
-		if (hasParentWithNode(childNode)) return;
+		if (hasParentWithNode(childNode)) return false;
 
 		//Rule 3: If a parent's node is present as a list item of the root node, do not continue with more children
 		//This allows a single generation of children when a list item is encountered
-		if (parent != null && parent.getNode() != null && !parent.isList() && hasListRootWithNode(getNode())) return;
+		if (parent != null && parent.getNode() != null && !parent.isList() && hasListRootWithNode(getNode())) return false;
 
 		//Rule 4: Do not follow the inverse of properties just followed if they lead to nodes that are list items
 		//This prevents 'reference data' from forming join-points in RDF lists
 		if (isInverse() != inverse && parent != null && getPredicate() != null &&
-				getPredicate().equals(statement.getPredicate()) && hasListRootWithNode(childNode)) return;
+				getPredicate().equals(statement.getPredicate()) && hasListRootWithNode(childNode)) return false;
+
+		return true;
+	}
+
+	/**
+	 * Checks rule 5 and, if it allows, adds the child. The rule depends on the
+	 * depths recorded as earlier children were added, so children must be added
+	 * one at a time, in breadth-first order.
+	 */
+	void addFollowedChild(Statement statement) {
+		RDFNode childNode = getChildNode(statement);
+		boolean inverse = isInverse(statement);
 
 		//Rule 5: Do not follow inverse properties if they lead to nodes that are
 		//        closer to the root (but not necessarily a parent)
@@ -100,21 +168,84 @@ public class RdfTree implements Comparable<RdfTree> {
 			if (hasSiblingOrAncestorSibling) return;
 		}
 
-		RdfTree rdfTree = new RdfTree(model, nameResolver, this, childNode, statement.getPredicate(), inverse, mapFromChildToDepth);
-		addChildNode(rdfTree);
+		addCreatedChild(createFollowedChild(statement), statement);
+	}
+
+	/**
+	 * A child for a statement this tree can follow, which is not added to the
+	 * tree, so that an update can build a subtree, and decide whether to keep
+	 * it, before changing the tree at all.
+	 */
+	RdfTree createFollowedChild(Statement statement) {
+		return new RdfTree(this, getChildNode(statement), statement.getPredicate(), isInverse(statement));
+	}
+
+	/**
+	 * Adds a child created for the statement, as {@link #addFollowedChild(Statement)}
+	 * does once rule 5 allows it.
+	 */
+	void addCreatedChild(RdfTree child, Statement statement) {
+		addChildNode(child);
+		context.nameResolver.registerStatement(statement);
+	}
+
+	/**
+	 * A child of this tree, sharing its context
+	 */
+	private RdfTree(RdfTree parent, RDFNode node, Property predicate, boolean inverse) {
+		this.parent = parent;
+		this.node = node;
+		this.predicate = predicate;
+		this.inverse = inverse;
+		list = false;
+		context = parent.context;
+		depth = calculateDepth();
 	}
 
 	private void addChildNode(RdfTree child) {
-		children.add(child);
+		addToChildren(child);
+		invalidateCanonicalOrder();
 		int existingDepth = getDepthInTree(node);
 		int depth = getDepth();
 		if (existingDepth == -1 || existingDepth < depth) {
-				mapFromChildToDepth.put(child.getNode(), depth); // not +1 because we measure root node as 0 depth.
+				context.mapFromChildToDepth.put(child.getNode(), depth); // not +1 because we measure root node as 0 depth.
 		}
 	}
 
 	public void addListItem(Resource listItem) {
-		children.add(new RdfTree(model, nameResolver, this, listItem, null, false, mapFromChildToDepth));
+		addToChildren(new RdfTree(this, listItem, null, false));
+		context.listItemNodes.add(listItem);
+		invalidateCanonicalOrder();
+		context.nameResolver.registerNode(listItem);
+	}
+
+	/**
+	 * Removes a child added with {@link #addFollowedChild(Statement)}, when the
+	 * statement it was added for has been removed from the model.
+	 */
+	void removeChild(RdfTree child) {
+		if (children != null && children.remove(child)) {
+			invalidateCanonicalOrder();
+			context.root.context.updateIndex = null;
+		}
+	}
+
+	private void addToChildren(RdfTree child) {
+		if (children == null) children = Lists.newArrayListWithCapacity(4);
+		children.add(child);
+		context.root.context.updateIndex = null;
+	}
+
+	/**
+	 * Where each resource appears in the tree, kept by {@link RdfTreeUpdate}
+	 * from one update to the next. Adding or removing any child discards it.
+	 */
+	RdfTreeUpdate.TreeIndex getUpdateIndex() {
+		return context.root.context.updateIndex;
+	}
+
+	void setUpdateIndex(RdfTreeUpdate.TreeIndex updateIndex) {
+		context.root.context.updateIndex = updateIndex;
 	}
 
 	public Property getPredicate() {
@@ -127,6 +258,7 @@ public class RdfTree implements Comparable<RdfTree> {
 
 
 	public List<RdfTree> getChildren() {
+		if (children == null) return Collections.emptyList();
 		return children;
 	}
 
@@ -136,42 +268,56 @@ public class RdfTree implements Comparable<RdfTree> {
 
 	public void setType(Resource type) {
 		this.type = type;
+		context.nameResolver.registerNode(type);
 	}
 
 	public boolean hasParentWithNode(RDFNode node) {
 		if (parent == null) return false;
-		if (parent.getNode() == null) return false;
-		if (parent.getNode().equals(node)) return true;
-		return parent.hasParentWithNode(node);
+		return parent.getPathNodes().contains(node);
+	}
+
+	/**
+	 * The nodes of this tree and of all its parents, up to the root or list.
+	 * The set is built when the first child asks for it, by adding this node
+	 * to its parent's set, which it shares rather than copies. Children
+	 * checking rules concurrently may build equal sets, and any one of them
+	 * is kept.
+	 */
+	private PathNodeSet getPathNodes() {
+		PathNodeSet pathNodes = this.pathNodes;
+		if (pathNodes == null) {
+			PathNodeSet parentPathNodes = parent == null ? PathNodeSet.EMPTY : parent.getPathNodes();
+			pathNodes = node == null ? parentPathNodes : parentPathNodes.with(node);
+			this.pathNodes = pathNodes;
+		}
+		return pathNodes;
 	}
 
 	public boolean hasListRootWithNode(RDFNode node) {
 		if (parent == null) return false;
-		if (parent.isList()) return parent.hasListItemWithNode(node);
-		return parent.hasListRootWithNode(node);
+		return context.root.hasListItemWithNode(node);
 	}
 
 	private int getDepthInTree(RDFNode node) {
-		return getRoot().getDepthOfNode(node);
+		return context.root.getDepthOfNode(node);
 	}
 
 	private int getDepthOfNode(RDFNode nodeArg) {
 		if (node != null && node.equals(nodeArg)) return 0;
-		Integer depth = mapFromChildToDepth.get(nodeArg);
+		Integer depth = context.mapFromChildToDepth.get(nodeArg);
 		if (depth == null) return -1;
 		return depth;
 	}
 
-	private RdfTree getRoot() {
-		if (parent == null) return this;
-		return parent.getRoot();
-	}
-
 	/**
 	 * Returns 0 for the list, 1 for each tree root,
 	 * and +1 for each child thereafter
 	 */
 	private int getDepth() {
+		return depth;
+	}
+
+	private int calculateDepth() {
 		if (parent == null) return 1;
 		if (parent.isList()) return 0;
 		return parent.getDepth() + 1;
@@ -179,17 +325,52 @@ public class RdfTree implements Comparable<RdfTree> {
 
 	private boolean hasListItemWithNode(RDFNode node) {
 		if (!list) return false;
-		for (RdfTree childTree: children) {
-			if (childTree.getNode().equals(node)) return true;
-		}
-		return false;
+		return context.listItemNodes.contains(node);
 	}
 
+	/**
+	 * Puts the children of every tree into their canonical order, unless they
+	 * are in it already. The generator does this once a tree is complete, so
+	 * writing it, however many times, does not sort it again.
+	 *
+	 * The order depends on the names of predicates and on which children have
+	 * children of their own, so adding a child, or a name changing, means the
+	 * tree is sorted again the next time.
+	 */
 	public void canonicalise() {
-		for (RdfTree childTree: children) {
-			childTree.canonicalise();
+		canonicalise(Maps.<Property, ChildSortKey.PredicateName>newHashMap());
+	}
+
+	private void canonicalise(Map<Property, ChildSortKey.PredicateName> predicateNames) {
+		NameResolver nameResolver = context.nameResolver;
+		if (canonical && canonicalNamesVersion == nameResolver.getNamesVersion()) return;
+
+		for (RdfTree childTree: getChildren()) {
+			childTree.canonicalise(predicateNames);
+		}
+		if (!list && children != null && children.size() > 1) {
+			List<ChildSortKey> sortKeys = Lists.newArrayListWithCapacity(children.size());
+			for (RdfTree childTree: children) {
+				sortKeys.add(new ChildSortKey(childTree, nameResolver, predicateNames));
+			}
+			Collections.sort(sortKeys, ChildSortKey.COMPARATOR);
+			for (int i = 0; i < sortKeys.size(); i++) {
+				children.set(i, sortKeys.get(i).getChild());
+			}
+		}
+
+		canonical = true;
+		canonicalNamesVersion = nameResolver.getNamesVersion();
+	}
+
+	/**
+	 * Marks this tree and its parents as no longer in canonical order. A parent's
+	 * order depends on whether this tree has children, so it is marked too.
+	 */
+	private void invalidateCanonicalOrder() {
+		for (RdfTree tree = this; tree != null && tree.canonical; tree = tree.parent) {
+			tree.canonical = false;
 		}
-		if (!list) Collections.sort(children);
 	}
 
 	private boolean isLiteral() {
@@ -207,7 +388,7 @@ public class RdfTree implements Comparable<RdfTree> {
 	public Resource getType() {
 		return type;
 	}
-    public Integer getTotalResults() {return this.totalResults;}
+    public Integer getTotalResults() {return isRoot() ? context.totalResults : null;}
 
 	@Override
 	public int compareTo(RdfTree tree) {
@@ -235,19 +416,79 @@ public class RdfTree implements Comparable<RdfTree> {
 					tree.getNode());
 		}
 
-		return nameResolver.compareNames(getPredicate(), tree.getPredicate());
+		return context.nameResolver.compareNames(getPredicate(), tree.getPredicate());
 	}
 
 	public String asXml() {
-		return new RdfTreeXmlWriter().asXml(this);
+		return asXml(WriterOptions.DEFAULT);
+	}
+
+	public String asXml(WriterOptions options) {
+		return new RdfTreeXmlWriter(options).asXml(this);
+	}
+
+	public void writeXml(Writer writer) throws IOException {
+		writeXml(writer, WriterOptions.DEFAULT);
+	}
+
+	public void writeXml(Writer writer, WriterOptions options) throws IOException {
+		new RdfTreeXmlWriter(options).writeXml(this, writer);
+	}
+
+	public void writeXml(OutputStream outputStream) throws IOException {
+		writeXml(outputStream, WriterOptions.DEFAULT);
+	}
+
+	public void writeXml(OutputStream outputStream, WriterOptions options) throws IOException {
+		writeXml(new OutputStreamWriter(outputStream, Charsets.UTF_8), options);
 	}
 
 	public String asHtml(String relativeUrlBase) {
-		return new RdfTreeXmlWriter().asHtml(this, relativeUrlBase);
+		return asHtml(relativeUrlBase, WriterOptions.DEFAULT);
+	}
+
+	public String asHtml(String relativeUrlBase, WriterOptions options) {
+		return new RdfTreeXmlWriter(options).asHtml(this, relativeUrlBase);
+	}
+
+	public void writeHtml(Writer writer, String relativeUrlBase) throws IOException {
+		writeHtml(writer, relativeUrlBase, WriterOptions.DEFAULT);
+	}
+
+	public void writeHtml(Writer writer, String relativeUrlBase, WriterOptions options) throws IOException {
+		new RdfTreeXmlWriter(options).writeHtml(this, relativeUrlBase, writer);
+	}
+
+	public void writeHtml(OutputStream outputStream, String relativeUrlBase) throws IOException {
+		writeHtml(outputStream, relativeUrlBase, WriterOptions.DEFAULT);
+	}
+
+	public void writeHtml(OutputStream outputStream, String relativeUrlBase, WriterOptions options) throws IOException {
+		writeHtml(new OutputStreamWriter(outputStream, Charsets.UTF_8), relativeUrlBase, options);
 	}
 
 	public String asJson() {
-		return new RdfTreeJsonWriter().asJson(this);
+		return asJson(WriterOptions.DEFAULT);
+	}
+
+	public String asJson(WriterOptions options) {
+		return new RdfTreeJsonWriter(options).asJson(this);
+	}
+
+	public void writeJson(Writer writer) throws IOException {
+		writeJson(writer, WriterOptions.DEFAULT);
+	}
+
+	public void writeJson(Writer writer, WriterOptions options) throws IOException {
+		new RdfTreeJsonWriter(options).writeJson(this, writer);
+	}
+
+	public void writeJson(OutputStream outputStream) throws IOException {
+		writeJson(outputStream, WriterOptions.DEFAULT);
+	}
+
+	public void writeJson(OutputStream outputStream, WriterOptions options) throws IOException {
+		writeJson(new OutputStreamWriter(outputStream, Charsets.UTF_8), options);
 	}
 
 	public boolean isList() {
@@ -255,11 +496,15 @@ public class RdfTree implements Comparable<RdfTree> {
 	}
 
 	public NameResolver getNameResolver() {
-		return nameResolver;
+		return context.nameResolver;
 	}
 
 	public boolean isChildlessResource() {
-		return node.isResource() && children.isEmpty();
+		return node.isResource() && getChildren().isEmpty();
+	}
+
+	RdfTree getParent() {
+		return parent;
 	}
 
 	public boolean isRoot() {
@@ -267,7 +512,7 @@ public class RdfTree implements Comparable<RdfTree> {
 	}
 
 	public boolean isEmpty() {
-		return children.isEmpty() && node == null;
+		return getChildren().isEmpty() && node == null;
 	}
 
 	/**
@@ -287,7 +532,7 @@ public class RdfTree implements Comparable<RdfTree> {
 	 * or not.
 	 */
 	public int getDepthOf(String uri) {
-		return getDepthOfNode(model.createResource(uri));
+		return getDepthOfNode(context.model.createResource(uri));
 	}
 
 	/**
@@ -295,9 +540,9 @@ public class RdfTree implements Comparable<RdfTree> {
 	 * decendents have been constructed
 	 */
 	public boolean isFullyConstructed() {
-		if (children.isEmpty()) return constructed;
+		if (getChildren().isEmpty()) return constructed;
 		boolean fullyConstructed = true;
-		for (RdfTree childTree: children) {
+		for (RdfTree childTree: getChildren()) {
 			if (!childTree.isFullyConstructed()) fullyConstructed = false;
 		}
 		return fullyConstructed;
@@ -317,6 +562,7 @@ public class RdfTree implements Comparable<RdfTree> {
 
 	public void markAsConstructed() {
 		constructed = true;
+		if (children != null) children.trimToSize();
 	}
 
 }
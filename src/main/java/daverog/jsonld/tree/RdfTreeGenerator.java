@@ -1,14 +1,25 @@
 package daverog.jsonld.tree;
 
-import com.google.common.base.Function;
+import com.google.common.base.Throwables;
 import com.google.common.collect.*;
+import com.google.common.hash.HashCode;
+import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.rdf.model.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class RdfTreeGenerator {
 
-    private final String rdfResultOntologyPrefix;
+    private static final int MIN_NODES_PER_TASK = 16;
+    private static final int MAX_TASKS_PER_DEPTH = 64;
+
+    private final RdfTreeGeneratorOptions options;
+    private final ResultOntology resultOntology;
+    private final ExecutorService executorService;
 
     enum TreeType {
         UNKNOWN,
@@ -18,11 +29,35 @@ public class RdfTreeGenerator {
     }
 
     public RdfTreeGenerator() {
-        rdfResultOntologyPrefix = RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX;
+        this(RdfTreeGeneratorOptions.DEFAULT);
     }
 
     public RdfTreeGenerator(String rdfResultOntologyPrefix) {
-        this.rdfResultOntologyPrefix = rdfResultOntologyPrefix;
+        this(RdfTreeGeneratorOptions.builder().resultOntologyPrefix(rdfResultOntologyPrefix).build());
+    }
+
+    /**
+     * A generator that expands the nodes of lists and trees in parallel, using
+     * the given executor. See {@link RdfTreeGeneratorOptions.Builder#executorService(ExecutorService)}.
+     */
+    public RdfTreeGenerator(ExecutorService executorService) {
+        this(RdfTreeGeneratorOptions.builder().executorService(executorService).build());
+    }
+
+    /**
+     * A generator is immutable, and the terms of the RDF Result ontology are
+     * resolved when it is created, so one generator can be shared by any number
+     * of threads, each generating its own trees from its own models. When a
+     * {@link VocabularyCache} is used, that is shared as well.
+     */
+    public RdfTreeGenerator(RdfTreeGeneratorOptions options) {
+        this.options = options;
+        this.resultOntology = new ResultOntology(options.getResultOntologyPrefix());
+        this.executorService = options.getExecutorService();
+    }
+
+    public RdfTreeGeneratorOptions getOptions() {
+        return options;
     }
 
     public RdfTree generateRdfTree(Model model) throws RdfTreeException {
@@ -38,18 +73,281 @@ public class RdfTreeGenerator {
     }
 
     public RdfTree generateRdfTree(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) throws RdfTreeException {
-        NameResolver nameResolver = new NameResolver(model, prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix);
+        return generateRdfTree(model, prioritisedNamespaces, nameOverrides, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    /**
+     * Generates a tree holding a page of the items of a list: no more than
+     * <code>limit</code> items, or any number if it is
+     * {@link RdfTreeGeneratorOptions#UNLIMITED}, after skipping
+     * <code>offset</code> items in the order of the list. Only the items on
+     * the page are expanded, and, for a list ordered by a predicate, only as
+     * many items as the page reaches are sorted. The page is the same as
+     * those items of the whole list. Unless <code>result:meta</code> gives the
+     * total number of results, the tree of a paged list gives the number of
+     * items in the whole list. A tree of a single item is not paged.
+     */
+    public RdfTree generateRdfTree(Model model, int offset, int limit) throws RdfTreeException {
+        return generateRdfTree(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), offset, limit);
+    }
+
+    public RdfTree generateRdfTree(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, int offset, int limit) throws RdfTreeException {
+        ListPage page = new ListPage(offset, limit);
+        StatementSource statementSource = options.isIndexed() ? new StatementIndex(model) : new ModelStatementSource(model);
+        return generateRdfTree(statementSource, prioritisedNamespaces, nameOverrides, page);
+    }
+
+    /**
+     * Generates the tree using a pre-built index of the model, so that
+     * expanding each node costs time proportional to its degree. The
+     * index can be reused for any number of trees generated from the
+     * same, unchanged, model, or read straight from Turtle with
+     * {@link StatementIndex#readTurtle(java.io.Reader)}, with no model at all.
+     */
+    public RdfTree generateRdfTree(StatementIndex statementIndex) throws RdfTreeException {
+        return generateRdfTree(statementIndex, Lists.<String>newArrayList(), Maps.<String, String>newHashMap());
+    }
+
+    public RdfTree generateRdfTree(StatementIndex statementIndex, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) throws RdfTreeException {
+        return generateRdfTree(statementIndex, prioritisedNamespaces, nameOverrides, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    /**
+     * Generates a tree holding a page of the items of a list.
+     * See {@link #generateRdfTree(Model, int, int)}.
+     */
+    public RdfTree generateRdfTree(StatementIndex statementIndex, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, int offset, int limit) throws RdfTreeException {
+        return generateRdfTree(statementIndex, prioritisedNamespaces, nameOverrides, new ListPage(offset, limit));
+    }
+
+    /**
+     * Generates a tree from every graph of the dataset, each scoped to the
+     * <code>result:this</code> and <code>result:meta</code> statements of its
+     * own graph. See {@link #generateRdfTrees(DatasetIndex, List, Map)}.
+     */
+    public Map<String, RdfTree> generateRdfTrees(Dataset dataset) throws RdfTreeException {
+        return generateRdfTrees(new DatasetIndex(dataset));
+    }
+
+    public Map<String, RdfTree> generateRdfTrees(DatasetIndex datasetIndex) throws RdfTreeException {
+        return generateRdfTrees(datasetIndex, Lists.<String>newArrayList(), Maps.<String, String>newHashMap());
+    }
+
+    /**
+     * Generates a tree from every graph of the index, returning them by the
+     * names of the graphs, in the same order.
+     *
+     * When the generator has an executor, graphs are generated concurrently,
+     * each one on a single thread, rather than the nodes of each tree being
+     * expanded in parallel.
+     */
+    public Map<String, RdfTree> generateRdfTrees(DatasetIndex datasetIndex, final List<String> prioritisedNamespaces, final Map<String, String> nameOverrides) throws RdfTreeException {
+        Map<String, RdfTree> trees = Maps.newLinkedHashMap();
+        if (executorService == null) {
+            for (String name : datasetIndex.getGraphNames()) {
+                trees.put(name, generateGraphTree(name, datasetIndex.getGraph(name), prioritisedNamespaces, nameOverrides));
+            }
+            return trees;
+        }
+
+        final RdfTreeGenerator graphGenerator = new RdfTreeGenerator(options.toBuilder().executorService(null).build());
+        Map<String, Future<RdfTree>> futureTrees = Maps.newLinkedHashMap();
+        try {
+            for (final String name : datasetIndex.getGraphNames()) {
+                final StatementIndex graph = datasetIndex.getGraph(name);
+                futureTrees.put(name, executorService.submit(new Callable<RdfTree>() {
+                    public RdfTree call() throws RdfTreeException {
+                        return graphGenerator.generateGraphTree(name, graph, prioritisedNamespaces, nameOverrides);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<RdfTree>> futureTree : futureTrees.entrySet()) {
+                trees.put(futureTree.getKey(), getGraphTree(futureTree.getValue()));
+            }
+            return trees;
+        } finally {
+            // When one graph fails, the trees of the others will not be returned,
+            // so stop generating them. Trees already generated are unaffected.
+            for (Future<RdfTree> futureTree : futureTrees.values()) {
+                futureTree.cancel(true);
+            }
+        }
+    }
+
+    private RdfTree generateGraphTree(String name, StatementIndex graph, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) throws RdfTreeException {
+        try {
+            return generateRdfTree(graph, prioritisedNamespaces, nameOverrides);
+        } catch (RdfTreeException e) {
+            throw new RdfTreeException("The tree of graph " + name + " could not be generated: " + e.getMessage(), e);
+        }
+    }
+
+    private RdfTree getGraphTree(Future<RdfTree> futureTree) throws RdfTreeException {
+        try {
+            return futureTree.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RdfTreeException("Interrupted while generating the trees of the dataset", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), RdfTreeException.class);
+            Throwables.propagateIfPossible(e.getCause());
+            throw new RdfTreeException("Error while generating the trees of the dataset", e.getCause());
+        }
+    }
+
+    /**
+     * Brings a tree generated from the model up to date with the changes made
+     * to the model since, which a {@link ModelChanges} registered with the model
+     * has collected. The tree returned is the same as generating it again from
+     * the changed model.
+     *
+     * The children that the added and removed statements give the resources in
+     * the tree are added or removed in place, with the subtrees below them, and
+     * the same tree is returned. When the changes touch the RDF Result ontology
+     * or the values a list is ordered by, change the names, or leave the order
+     * of some children to the order in which statements are found, the tree is
+     * generated again and a new tree returned, and the tree passed in is left
+     * as it was. The tree must have been generated by this generator, with the
+     * same namespaces and overrides.
+     *
+     * Only the names of the terms of the changed statements are checked, unless
+     * a term of the model is used with more than one type. The first update of
+     * a tree indexes where each resource appears in it, and later updates keep
+     * that index up to date rather than walking the tree again.
+     */
+    public RdfTree updateRdfTree(RdfTree tree, Model model, ModelChanges changes) throws RdfTreeException {
+        return updateRdfTree(tree, model, changes, Lists.<String>newArrayList(), Maps.<String, String>newHashMap());
+    }
+
+    public RdfTree updateRdfTree(RdfTree tree, Model model, ModelChanges changes, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) throws RdfTreeException {
+        return updateRdfTree(tree, model, changes, prioritisedNamespaces, nameOverrides, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    /**
+     * Brings a tree of a page of a list, generated with
+     * {@link #generateRdfTree(Model, List, Map, int, int)}, up to date with the
+     * changes made to the model since.
+     */
+    public RdfTree updateRdfTree(RdfTree tree, Model model, ModelChanges changes, List<String> prioritisedNamespaces, Map<String, String> nameOverrides,
+            int offset, int limit) throws RdfTreeException {
+        if (changes.isEmpty()) return tree;
+
+        RdfTreeUpdate update = new RdfTreeUpdate(tree, model, resultOntology, options.getMaximumNodes());
+        if (!update.plan(changes) || !hasNamesOf(tree, model, prioritisedNamespaces, nameOverrides))
+            return generateRdfTree(model, prioritisedNamespaces, nameOverrides, offset, limit);
+
+        checkNodeCount(update.getNodeCount());
+        update.apply();
+        return tree;
+    }
+
+    /**
+     * Whether the names of the tree are those of the changed model. An update
+     * checks the names of the terms it changes, which is enough unless the
+     * names depend on the order of the statements, when every name is checked.
+     */
+    private boolean hasNamesOf(RdfTree tree, Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) {
+        NameResolver nameResolver = tree.getNameResolver();
+        if (nameResolver.isLazy() || !nameResolver.namesDependOnOrder()) return true;
+        return nameResolver.hasSameNamesAs(createNameResolver(new ModelStatementSource(model), prioritisedNamespaces, nameOverrides));
+    }
+
+    /**
+     * Generates the tree and writes it as JSON. When the generator has an
+     * {@link OutputCache}, a model that has been converted before with the
+     * same settings is neither generated nor written again.
+     */
+    public String generateJson(Model model) throws RdfTreeException {
+        return generateJson(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.DEFAULT);
+    }
+
+    public String generateJson(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions) throws RdfTreeException {
+        return generateJson(model, prioritisedNamespaces, nameOverrides, writerOptions, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    /**
+     * Generates a tree holding a page of the items of a list, as
+     * {@link #generateRdfTree(Model, int, int)} does, and writes it as JSON.
+     * Each page is cached on its own.
+     */
+    public String generateJson(Model model, int offset, int limit) throws RdfTreeException {
+        return generateJson(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.DEFAULT, offset, limit);
+    }
+
+    public String generateJson(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions,
+            int offset, int limit) throws RdfTreeException {
+        return generateOutput(model, prioritisedNamespaces, nameOverrides, new ListPage(offset, limit), OutputCache.Format.JSON, null, writerOptions);
+    }
+
+    public String generateXml(Model model) throws RdfTreeException {
+        return generateXml(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.DEFAULT);
+    }
+
+    public String generateXml(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions) throws RdfTreeException {
+        return generateXml(model, prioritisedNamespaces, nameOverrides, writerOptions, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    public String generateXml(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions,
+            int offset, int limit) throws RdfTreeException {
+        return generateOutput(model, prioritisedNamespaces, nameOverrides, new ListPage(offset, limit), OutputCache.Format.XML, null, writerOptions);
+    }
+
+    public String generateHtml(Model model, String relativeUrlBase) throws RdfTreeException {
+        return generateHtml(model, relativeUrlBase, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.DEFAULT);
+    }
+
+    public String generateHtml(Model model, String relativeUrlBase, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions) throws RdfTreeException {
+        return generateHtml(model, relativeUrlBase, prioritisedNamespaces, nameOverrides, writerOptions, 0, RdfTreeGeneratorOptions.UNLIMITED);
+    }
+
+    public String generateHtml(Model model, String relativeUrlBase, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, WriterOptions writerOptions,
+            int offset, int limit) throws RdfTreeException {
+        return generateOutput(model, prioritisedNamespaces, nameOverrides, new ListPage(offset, limit), OutputCache.Format.HTML, relativeUrlBase, writerOptions);
+    }
+
+    private String generateOutput(final Model model, final List<String> prioritisedNamespaces, final Map<String, String> nameOverrides, final ListPage page,
+            final OutputCache.Format format, final String relativeUrlBase, final WriterOptions writerOptions) throws RdfTreeException {
+        OutputCache outputCache = options.getOutputCache();
+        HashCode graphHash = outputCache == null ? null : GraphHash.hash(model);
+        if (graphHash == null)
+            return writeOutput(generateRdfTree(model, prioritisedNamespaces, nameOverrides, page.offset, page.limit), format, relativeUrlBase, writerOptions);
+
+        OutputCache.Key key = new OutputCache.Key(graphHash, options, prioritisedNamespaces, nameOverrides, page.offset, page.limit,
+                format, relativeUrlBase, writerOptions);
+        return outputCache.get(key, new Callable<String>() {
+            public String call() throws RdfTreeException {
+                return writeOutput(generateRdfTree(model, prioritisedNamespaces, nameOverrides, page.offset, page.limit), format, relativeUrlBase, writerOptions);
+            }
+        });
+    }
+
+    private String writeOutput(RdfTree tree, OutputCache.Format format, String relativeUrlBase, WriterOptions writerOptions) {
+        switch (format) {
+            case XML: return tree.asXml(writerOptions);
+            case HTML: return tree.asHtml(relativeUrlBase, writerOptions);
+            default: return tree.asJson(writerOptions);
+        }
+    }
+
+    private NameResolver createNameResolver(StatementSource statementSource, List<String> prioritisedNamespaces, Map<String, String> nameOverrides) {
+        VocabularyCache vocabularyCache = options.getVocabularyCache();
+        if (vocabularyCache == null)
+            return new NameResolver(statementSource, prioritisedNamespaces, nameOverrides, resultOntology.prefix, options.isLazyNameResolution());
+        return vocabularyCache.createNameResolver(statementSource, prioritisedNamespaces, nameOverrides, resultOntology.prefix, options.isLazyNameResolution());
+    }
+
+    private RdfTree generateRdfTree(StatementSource statementSource, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, ListPage page) throws RdfTreeException {
+        Model model = statementSource.getModel();
+        NameResolver nameResolver = createNameResolver(statementSource, prioritisedNamespaces, nameOverrides);
         TreeType treeType = TreeType.UNKNOWN;
         HashMap<RDFNode, Integer> mapFromChildToDepth = new HashMap<RDFNode, Integer>();
 
-        if (model.isEmpty())
+        if (statementSource.isEmpty())
             return new RdfTree(model, nameResolver, null, mapFromChildToDepth);
 
-        List<Statement> results = getSomeStatements(model, new SimpleSelector(
-                model.getResource(rdfResultOntologyPrefix + "this"),
-                null,
-                (RDFNode) null),
-                "result:this is not present as the subject of a statement, so an RDF tree cannot be generated");
+        List<Statement> results = statementSource.getStatementsWithSubject(resultOntology.thisResource);
+        if (results.isEmpty())
+            throw new RdfTreeException("result:this is not present as the subject of a statement, so an RDF tree cannot be generated");
         Statement firstResult = results.get(0);
         Resource orderingPredicate = null;
         boolean sortAscending = true;
@@ -57,21 +355,21 @@ public class RdfTreeGenerator {
             for (Statement result : results) {
             if (!result.getObject().isResource())
                 throw new RdfTreeException("result:this statement contained a non-resource object");
-            if (result.getPredicate().getURI().equals(rdfResultOntologyPrefix + "item")) {
+            if (ResultOntology.is(result.getPredicate(), resultOntology.item)) {
                 if (results.size() != 1)
                     throw new RdfTreeException("More than one result:this subject was found for a single item result");
                 if (treeType == TreeType.UNKNOWN) treeType = TreeType.ITEM;
                 else
                     throw new RdfTreeException("Tree type " + treeType + " was identified alongside conflicting predicate result:item");
             }
-            if (result.getPredicate().getURI().equals(rdfResultOntologyPrefix + "next")) {
+            if (ResultOntology.is(result.getPredicate(), resultOntology.next)) {
                 if (results.size() != 1)
                     throw new RdfTreeException("More than one starting point was found for a list described by result:next");
                 if (treeType == TreeType.UNKNOWN) treeType = TreeType.LIST;
                 else
                     throw new RdfTreeException("Tree type " + treeType + " was identified alongside conflicting predicate result:next");
             }
-            if (result.getPredicate().getURI().equals(rdfResultOntologyPrefix + "listItem")) {
+            if (ResultOntology.is(result.getPredicate(), resultOntology.listItem)) {
                 if (treeType == TreeType.UNKNOWN || treeType == TreeType.LIST_WITH_ORDER_BY_PREDICATE)
                     treeType = TreeType.LIST_WITH_ORDER_BY_PREDICATE;
                 else
@@ -80,21 +378,21 @@ public class RdfTreeGenerator {
             }
         }
         for (Statement result : results) {
-            if (result.getPredicate().getURI().equals(rdfResultOntologyPrefix + "orderByPredicate")) {
+            if (ResultOntology.is(result.getPredicate(), resultOntology.orderByPredicate)) {
                 if (orderingPredicate != null)
                     throw new RdfTreeException("More than one ordering predicate was supplied.");
                 if (treeType != TreeType.LIST_WITH_ORDER_BY_PREDICATE)
                     throw new RdfTreeException("An ordering predicate was supplied for tree type " + treeType);
                 orderingPredicate = result.getObject().asResource();
             }
-            if (result.getPredicate().getURI().equals(rdfResultOntologyPrefix + "sortOrder")) {
+            if (ResultOntology.is(result.getPredicate(), resultOntology.sortOrder)) {
                 if (treeType != TreeType.LIST_WITH_ORDER_BY_PREDICATE)
                     throw new RdfTreeException("An sort order was supplied for tree type " + treeType);
                 if (!result.getObject().isResource()) throw new RdfTreeException("An sort order was not a resource");
                 Resource sortOrder = result.getObject().asResource();
-                if (sortOrder.getURI().equals(rdfResultOntologyPrefix + "AscendingOrder")) {
+                if (ResultOntology.is(sortOrder, resultOntology.ascendingOrder)) {
                     sortAscending = true;
-                } else if (sortOrder.getURI().equals(rdfResultOntologyPrefix + "DescendingOrder")) {
+                } else if (ResultOntology.is(sortOrder, resultOntology.descendingOrder)) {
                     sortAscending = false;
                 } else {
                     throw new RdfTreeException("Unknown sort order: " + result.getObject().asResource().getURI());
@@ -103,207 +401,335 @@ public class RdfTreeGenerator {
         }
 
         if (treeType == TreeType.ITEM) {
-            return buildRdfTree(model, new RdfTree(model, nameResolver, firstResult.getObject(), mapFromChildToDepth));
+            return buildRdfTree(statementSource, new RdfTree(model, nameResolver, firstResult.getObject(), mapFromChildToDepth));
         } else if (treeType == TreeType.LIST) {
-            return buildRdfList(model, nameResolver, generateListItemsUsingResultNext(model, firstResult.getObject().asResource()), getTotalResults(model));
+            listItems = generateListItemsUsingResultNext(statementSource, firstResult.getObject().asResource());
+            Integer totalResults = getTotalResults(statementSource, listItems.size(), page);
+            return buildRdfList(model, statementSource, nameResolver, page.select(listItems), totalResults);
         } else if (treeType == TreeType.LIST_WITH_ORDER_BY_PREDICATE) {
-            listItems = sortListAccordingToOrderingPredicate(listItems, orderingPredicate, sortAscending, model);
-            return buildRdfList(model, nameResolver, listItems, getTotalResults(model));
+            Integer totalResults = getTotalResults(statementSource, listItems.size(), page);
+            listItems = sortListAccordingToOrderingPredicate(listItems, orderingPredicate, sortAscending, statementSource, page);
+            return buildRdfList(model, statementSource, nameResolver, listItems, totalResults);
         }
 
         throw new RdfTreeException("The tree type could not be identified, the necessary result:this statements were not present");
     }
 
-    private Integer getTotalResults(Model model) {
-        List<RDFNode> totalResultsList = model.listObjectsOfProperty(model.createResource(rdfResultOntologyPrefix + "meta"), model.createProperty(rdfResultOntologyPrefix + "totalResults")).toList();
-        if (totalResultsList.size() > 0) return totalResultsList.get(0).asLiteral().getInt();
-        return null;
+    /**
+     * The total number of results given by <code>result:meta</code>, or else,
+     * when the tree holds only a page of the list, the number of items in the list.
+     */
+    private Integer getTotalResults(StatementSource statementSource, int listItemCount, ListPage page) {
+        for (Statement statement : statementSource.getStatementsWithSubject(resultOntology.metaResource)) {
+            if (ResultOntology.is(statement.getPredicate(), resultOntology.totalResults))
+                return statement.getObject().asLiteral().getInt();
+        }
+        return page.isPaged() ? listItemCount : null;
     }
 
+    /**
+     * Sorts the list items by their values, or, for a page of the list, selects
+     * the items on the page with a bounded heap, holding only as many items as
+     * the page reaches rather than sorting them all.
+     *
+     * Both orders are the same total order: items are compared by their values,
+     * and items that the values cannot tell apart, either way round, such as
+     * items without values, are ordered by their URIs, and then by the order of
+     * the list. The whole order is reversed for a descending list. So a page
+     * holds exactly the items at those positions of the whole list.
+     */
     private List<Resource> sortListAccordingToOrderingPredicate(
-            List<Resource> listItems, final Resource orderingPredicate, final boolean sortAscending, final Model model) {
-        Collections.sort(listItems, new Comparator<Resource>() {
-            public int compare(Resource first, Resource second) {
-                List<RDFNode> firstValues = getAllValuesForSubjectAndPredicate(model, first, orderingPredicate);
-                List<RDFNode> secondValues = getAllValuesForSubjectAndPredicate(model, second, orderingPredicate);
-
-                // Resources without any values for the ordering predicate are sorted in the same way as sparql would
-                // which is that they are treated as having the lowest possible value.
-                if (firstValues.isEmpty()) return -1;
-                if (secondValues.isEmpty()) return 1;
-
-                return RdfTreeUtils.compareTwoListsOfValues(firstValues, secondValues, new Comparator<RDFNode>() {
-                    public int compare(RDFNode node1, RDFNode node2) {
-                        //The following describes the ordering preference when sorting
-                        //lists of resources by the values of their objects.
-                        //
-                        //The natural (Java) ordering is used, but with a preference
-                        //for types of object (in order of how they would appear in
-                        //a list):
-                        //
-                        //1: Strings
-                        //2: Any other literals (ordered by toString if their types differ)
-                        //3: Resources (ordered by URI)
-
-                        if (node1.isLiteral() && !node2.isLiteral()) return -1;
-                        if (!node1.isLiteral() && node2.isLiteral()) return 1;
-                        if (node1.isLiteral() && node2.isLiteral()) {
-
-                            Object value1 = node1.asLiteral().getValue();
-                            Object value2 = node2.asLiteral().getValue();
-
-                            if (value1 instanceof String && !(value2 instanceof String)) return -1;
-                            if (!(value1 instanceof String) && value2 instanceof String) return 1;
-
-                            return RdfTreeUtils.compareObjects(
-                                    node1.asLiteral().getValue(),
-                                    node2.asLiteral().getValue());
-                        }
-                        return RdfTreeUtils.compareObjects(node1, node2);
-                    }
-                });
-            }
-
+            List<Resource> listItems, Resource orderingPredicate, boolean sortAscending, StatementSource statementSource, ListPage page) {
+        final List<ListItemSortKey> sortKeys = Lists.newArrayListWithCapacity(listItems.size());
+        for (Resource listItem : listItems) {
+            sortKeys.add(new ListItemSortKey(listItem, getAllValuesForSubjectAndPredicate(statementSource, listItem, orderingPredicate)));
+        }
 
-        });
+        Ordering<Integer> ordering = new Ordering<Integer>() {
+            public int compare(Integer first, Integer second) {
+                ListItemSortKey firstKey = sortKeys.get(first);
+                ListItemSortKey secondKey = sortKeys.get(second);
+                int comparison = ListItemSortKey.COMPARATOR.compare(firstKey, secondKey);
+                if (comparison != 0 && comparison == -ListItemSortKey.COMPARATOR.compare(secondKey, firstKey))
+                    return comparison;
+                comparison = RdfTreeUtils.compareObjects(firstKey.getListItem(), secondKey.getListItem());
+                if (comparison != 0) return comparison;
+                return first.compareTo(second);
+            }
+        };
+        if (!sortAscending) ordering = ordering.reverse();
 
-        if (!sortAscending) Collections.reverse(listItems);
+        List<Integer> sortedIndexes;
+        if (page.isPaged()) {
+            sortedIndexes = selectPage(ordering, sortKeys.size(), page);
+        } else {
+            sortedIndexes = Lists.newArrayListWithCapacity(sortKeys.size());
+            for (int i = 0; i < sortKeys.size(); i++) {
+                sortedIndexes.add(i);
+            }
+            Collections.sort(sortedIndexes, ordering);
+        }
 
-        return listItems;
+        List<Resource> sortedListItems = Lists.newArrayListWithCapacity(sortedIndexes.size());
+        for (Integer i : sortedIndexes) {
+            sortedListItems.add(listItems.get(i));
+        }
+        return sortedListItems;
     }
 
-    private List<RDFNode> getAllValuesForSubjectAndPredicate(Model model, Resource subject, Resource predicate) {
-        Property property = predicate == null ? null : model.getProperty(predicate.getURI());
-
-        List<Statement> statements = model.listStatements(
-                new SimpleSelector(
-                        subject,
-                        property,
-                        (RDFNode) null)).toList();
+    private List<Integer> selectPage(Ordering<Integer> ordering, int listItemCount, ListPage page) {
+        int pageEnd = page.getEnd(listItemCount);
+        if (page.offset >= pageEnd) return Collections.emptyList();
+
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(pageEnd, ordering.reverse());
+        for (int i = 0; i < listItemCount; i++) {
+            if (heap.size() < pageEnd) {
+                heap.add(i);
+            } else if (ordering.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        return ordering.sortedCopy(heap).subList(page.offset, pageEnd);
+    }
 
-        return Lists.transform(statements, new Function<Statement, RDFNode>() {
-            public RDFNode apply(Statement statement) {
-                return statement.getObject();
+    private List<RDFNode> getAllValuesForSubjectAndPredicate(StatementSource statementSource, Resource subject, Resource predicate) {
+        List<RDFNode> values = Lists.newArrayList();
+        for (Statement statement : statementSource.getStatementsWithSubject(subject)) {
+            if (predicate == null || statement.getPredicate().asNode().equals(predicate.asNode())) {
+                values.add(statement.getObject());
             }
-        });
+        }
+        return values;
     }
 
-    private List<Resource> generateListItemsUsingResultNext(Model model, Resource firstItem) throws RdfTreeException {
-        Statement next = getNoneOrSingleStatement(model, new SimpleSelector(
-                firstItem,
-                model.getProperty(rdfResultOntologyPrefix + "next"),
-                (RDFNode) null), "too many result:next predicates assigned to " + firstItem.toString());
+    /**
+     * Follows the chain of result:next statements from the first item, iteratively,
+     * so that the length of the list is not limited by the depth of the stack.
+     */
+    private List<Resource> generateListItemsUsingResultNext(StatementSource statementSource, Resource firstItem) throws RdfTreeException {
+        List<Resource> listItems = Lists.newArrayList();
+        Set<Resource> visitedItems = Sets.newHashSet();
 
-        if (next != null) {
-            if (!next.getObject().isResource()) {
-                throw new RdfTreeException("result:next cannot be a literal or blank node");
+        Resource item = firstItem;
+        while (item != null) {
+            if (!visitedItems.add(item)) {
+                throw new RdfTreeException("result:next forms a cycle at " + item.toString());
             }
-
-            return Lists.<Resource>asList(firstItem, generateListItemsUsingResultNext(model, next.getObject().asResource()).toArray(new Resource[0]));
+            listItems.add(item);
+            item = getNextListItem(statementSource, item);
         }
 
-        return Lists.newArrayList(firstItem);
+        return listItems;
     }
 
-    private RdfTree buildRdfTree(Model model, RdfTree root) {
-        while (!root.isFullyConstructed()) {
-            expandRdfTree(model, root);
+    private Resource getNextListItem(StatementSource statementSource, Resource item) throws RdfTreeException {
+        Statement next = null;
+        for (Statement statement : statementSource.getStatementsWithSubject(item)) {
+            if (ResultOntology.is(statement.getPredicate(), resultOntology.next)) {
+                if (next != null) throw new RdfTreeException("too many result:next predicates assigned to " + item.toString());
+                next = statement;
+            }
+        }
+
+        if (next == null) return null;
+        if (!next.getObject().isResource()) {
+            throw new RdfTreeException("result:next cannot be a literal or blank node");
         }
+        return next.getObject().asResource();
+    }
+
+    private RdfTree buildRdfTree(StatementSource statementSource, RdfTree root) throws RdfTreeException {
+        expandRdfTree(statementSource, Lists.newArrayList(root));
+        root.canonicalise();
 
         return root;
     }
 
-    private RdfTree buildRdfList(Model model, NameResolver nameResolver, List<Resource> listItems, Integer totalResults) throws RdfTreeException {
+    private RdfTree buildRdfList(Model model, StatementSource statementSource, NameResolver nameResolver, List<Resource> listItems, Integer totalResults) throws RdfTreeException {
         RdfTree list = new RdfTree(model, nameResolver, new HashMap<RDFNode, Integer>(), totalResults);
 
         for (Resource listItem : listItems) {
             list.addListItem(listItem);
         }
 
-        while (!list.isFullyConstructed()) {
-            for (RdfTree childTree : list.getChildren()) {
-                expandRdfTree(model, childTree);
-            }
-        }
+        expandRdfTree(statementSource, list.getChildren());
+        list.canonicalise();
 
         return list;
     }
 
-    private RdfTree expandRdfTree(Model model, RdfTree current) {
-        if (!current.isConstructed()) {
-
-            // If this is a URI;
-            if (current.getNode().isResource()) {
-
-                // Find all statements in which this resource is the subject.
-                List<Statement> statements = model.listStatements(new SimpleSelector(
-                        current.getNode().asResource(),
-                        null,
-                        (RDFNode) null)).toList();
-
-                // Find all statements in which this resource is the object.
-                List<Statement> inverseStatements = model.listStatements(new SimpleSelector(
-                        null,
-                        null,
-                        (RDFNode) current.getNode())).toList();
+    /**
+     * Expands the trees breadth first, one depth at a time, so that every node is visited once.
+     *
+     * All the nodes at one depth are constructed, in the order in which they
+     * were added to the tree, before any node at the next depth. The depth
+     * based rules of {@link RdfTree#addChild(Statement)} rely on this.
+     *
+     * When running in parallel, finding the statements of each node and checking
+     * the rules that depend only on its path are done concurrently, in batches.
+     * The children are then added from each batch in turn, on this thread, so
+     * the depths recorded in the tree are updated in exactly the sequential order.
+     */
+    private void expandRdfTree(StatementSource statementSource, Collection<RdfTree> trees) throws RdfTreeException {
+        List<RdfTree> frontier = Lists.newArrayList(trees);
+        int nodeCount = frontier.size();
+        checkNodeCount(nodeCount);
+
+        while (!frontier.isEmpty()) {
+            List<RdfTree> nextFrontier = Lists.newArrayList();
+
+            if (executorService == null || frontier.size() < 2 * MIN_NODES_PER_TASK) {
+                for (RdfTree current : frontier) {
+                    nodeCount += addChildren(findExpansion(statementSource, current), nextFrontier);
+                    checkNodeCount(nodeCount);
+                }
+            } else {
+                for (Future<List<Expansion>> batch : submitExpansions(statementSource, frontier)) {
+                    for (Expansion expansion : getExpansions(batch)) {
+                        nodeCount += addChildren(expansion, nextFrontier);
+                    }
+                    checkNodeCount(nodeCount);
+                }
+            }
 
-                inverseStatements.removeAll(statements);
+            frontier = nextFrontier;
+        }
+    }
 
-                // If this URI is RDF `type', then mark it as so.
-                List<Statement> types = model.listStatements(new SimpleSelector(
-                        current.getNode().asResource(),
-                        model.getProperty(RdfTree.RDF_TYPE),
-                        (RDFNode) null)).toList();
+    private List<Future<List<Expansion>>> submitExpansions(final StatementSource statementSource, List<RdfTree> frontier) {
+        int batchSize = Math.max(MIN_NODES_PER_TASK, (frontier.size() + MAX_TASKS_PER_DEPTH - 1) / MAX_TASKS_PER_DEPTH);
 
-                if (types.size() == 1) {
-                    current.setType(types.get(0).getObject().asResource());
+        List<Future<List<Expansion>>> batches = Lists.newArrayList();
+        for (final List<RdfTree> batch : Lists.partition(frontier, batchSize)) {
+            batches.add(executorService.submit(new Callable<List<Expansion>>() {
+                public List<Expansion> call() {
+                    List<Expansion> expansions = Lists.newArrayListWithCapacity(batch.size());
+                    for (RdfTree current : batch) {
+                        expansions.add(findExpansion(statementSource, current));
+                    }
+                    return expansions;
                 }
+            }));
+        }
+        return batches;
+    }
 
-                // Add statements as children of `current'
-                handleStatements(current, statements);
-                handleStatements(current, inverseStatements);
-            }
-
-            current.markAsConstructed();
+    private List<Expansion> getExpansions(Future<List<Expansion>> batch) throws RdfTreeException {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RdfTreeException("Interrupted while expanding the tree", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new RdfTreeException("Error while expanding the tree", e.getCause());
+        }
+    }
 
-        } else {
-            if (current.getNode().isResource()) {
-                for (RdfTree childTree : current.getChildren()) {
-                    expandRdfTree(model, childTree);
-                }
+    /**
+     * Finds the type of a node and the statements that may become its children,
+     * without changing the tree. Safe to call for many nodes concurrently.
+     */
+    private Expansion findExpansion(StatementSource statementSource, RdfTree current) {
+        List<Statement> followableStatements = Lists.newArrayList();
+        RDFNode type = null;
+
+        // If this is a URI;
+        if (current.getNode().isResource()) {
+            Resource resource = current.getNode().asResource();
+
+            // If this URI is RDF `type', then mark it as so.
+            List<RDFNode> types = statementSource.getTypes(resource);
+            if (types.size() == 1) {
+                type = types.get(0);
             }
+
+            // Find all statements in which this resource is the subject,
+            // and those in which it is only the object.
+            addFollowableStatements(current, statementSource.getStatementsWithSubject(resource), followableStatements);
+            addFollowableStatements(current, statementSource.getInverseStatements(resource), followableStatements);
         }
 
-        return current;
+        return new Expansion(current, type, followableStatements);
     }
 
-    private void handleStatements(RdfTree current, List<Statement> statements) {
+    private void addFollowableStatements(RdfTree current, List<Statement> statements, List<Statement> followableStatements) {
         for (Statement statement : statements) {
-            if (!statement.getPredicate().getNameSpace().equals(rdfResultOntologyPrefix)) {
-                current.addChild(statement);
+            if (!resultOntology.isInNamespace(statement.getPredicate()) && current.canFollow(statement)) {
+                followableStatements.add(statement);
             }
         }
     }
 
-    private List<Statement> getSomeStatements(Model model, SimpleSelector selector, String notFoundMessage) throws RdfTreeException {
-        StmtIterator statements = model.listStatements(selector);
+    /**
+     * Adds the children found for a node, returning how many there are.
+     */
+    private int addChildren(Expansion expansion, List<RdfTree> nextFrontier) {
+        RdfTree current = expansion.tree;
+        if (expansion.type != null) {
+            current.setType(expansion.type.asResource());
+        }
 
-        if (!statements.hasNext()) {
-            throw new RdfTreeException(notFoundMessage);
+        // Add statements as children of `current'
+        for (Statement statement : expansion.followableStatements) {
+            current.addFollowedChild(statement);
         }
 
-        return statements.toList();
+        current.markAsConstructed();
+        nextFrontier.addAll(current.getChildren());
+        return current.getChildren().size();
+    }
+
+    private void checkNodeCount(int nodeCount) throws RdfTreeException {
+        int maximumNodes = options.getMaximumNodes();
+        if (maximumNodes != RdfTreeGeneratorOptions.UNLIMITED && nodeCount > maximumNodes)
+            throw new RdfTreeException("The tree has more than the maximum of " + maximumNodes + " nodes");
     }
 
-    private Statement getNoneOrSingleStatement(Model model, SimpleSelector selector, String tooManyMessage) throws RdfTreeException {
-        StmtIterator statements = model.listStatements(selector);
+    private static class Expansion {
+        private final RdfTree tree;
+        private final RDFNode type;
+        private final List<Statement> followableStatements;
 
-        if (!statements.hasNext()) {
-            return null;
+        private Expansion(RdfTree tree, RDFNode type, List<Statement> followableStatements) {
+            this.tree = tree;
+            this.type = type;
+            this.followableStatements = followableStatements;
+        }
+    }
+
+    /**
+     * The items of a list that a tree holds: no more than the limit, after
+     * skipping the offset, or every item.
+     */
+    private static class ListPage {
+        private final int offset;
+        private final int limit;
+
+        private ListPage(int offset, int limit) {
+            if (offset < 0)
+                throw new IllegalArgumentException("The offset cannot be negative: " + offset);
+            if (limit < 0 && limit != RdfTreeGeneratorOptions.UNLIMITED)
+                throw new IllegalArgumentException("The limit cannot be negative: " + limit);
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        private boolean isPaged() {
+            return offset != 0 || limit != RdfTreeGeneratorOptions.UNLIMITED;
+        }
+
+        private int getEnd(int listItemCount) {
+            if (limit == RdfTreeGeneratorOptions.UNLIMITED) return listItemCount;
+            return (int) Math.min(listItemCount, (long) offset + limit);
         }
 
-        Statement only = statements.nextStatement();
-        if (statements.hasNext()) throw new RdfTreeException(tooManyMessage);
-        return only;
+        private <T> List<T> select(List<T> listItems) {
+            if (!isPaged()) return listItems;
+            int end = getEnd(listItems.size());
+            if (offset >= end) return Collections.emptyList();
+            return listItems.subList(offset, end);
+        }
     }
 }
@@ -0,0 +1,193 @@
+package daverog.jsonld.tree;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The settings of an {@link RdfTreeGenerator}. Options are immutable, and are
+ * created with a {@link Builder}:
+ *
+ * <pre>
+ * RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder()
+ *         .executorService(executorService)
+ *         .vocabularyCache(vocabularyCache)
+ *         .build());
+ * </pre>
+ */
+public class RdfTreeGeneratorOptions {
+
+	/**
+	 * How the statements of the model are looked up while a tree is generated.
+	 */
+	public enum IndexStrategy {
+		/** Index the model when generating in parallel, and query it otherwise. */
+		AUTO,
+		/** Query the model for the statements of each node. */
+		MODEL,
+		/** Build a {@link StatementIndex} of the model before generating the tree. */
+		INDEX
+	}
+
+	public static final int UNLIMITED = -1;
+
+	public static final RdfTreeGeneratorOptions DEFAULT = builder().build();
+
+	private final String resultOntologyPrefix;
+	private final ExecutorService executorService;
+	private final IndexStrategy indexStrategy;
+	private final VocabularyCache vocabularyCache;
+	private final OutputCache outputCache;
+	private final boolean lazyNameResolution;
+	private final int maximumNodes;
+
+	private RdfTreeGeneratorOptions(Builder builder) {
+		this.resultOntologyPrefix = builder.resultOntologyPrefix;
+		this.executorService = builder.executorService;
+		this.indexStrategy = builder.indexStrategy;
+		this.vocabularyCache = builder.vocabularyCache;
+		this.outputCache = builder.outputCache;
+		this.lazyNameResolution = builder.lazyNameResolution;
+		this.maximumNodes = builder.maximumNodes;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public Builder toBuilder() {
+		return new Builder()
+				.resultOntologyPrefix(resultOntologyPrefix)
+				.executorService(executorService)
+				.indexStrategy(indexStrategy)
+				.vocabularyCache(vocabularyCache)
+				.outputCache(outputCache)
+				.lazyNameResolution(lazyNameResolution)
+				.maximumNodes(maximumNodes);
+	}
+
+	public String getResultOntologyPrefix() {
+		return resultOntologyPrefix;
+	}
+
+	/**
+	 * The executor that nodes are expanded in parallel on, or null to expand
+	 * them on the calling thread.
+	 */
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	public IndexStrategy getIndexStrategy() {
+		return indexStrategy;
+	}
+
+	/**
+	 * Whether the model is indexed before generating a tree from it.
+	 */
+	boolean isIndexed() {
+		switch (indexStrategy) {
+			case INDEX: return true;
+			case MODEL: return false;
+			default: return executorService != null;
+		}
+	}
+
+	public VocabularyCache getVocabularyCache() {
+		return vocabularyCache;
+	}
+
+	public OutputCache getOutputCache() {
+		return outputCache;
+	}
+
+	public boolean isLazyNameResolution() {
+		return lazyNameResolution;
+	}
+
+	/**
+	 * The most nodes a tree may have, including list items, or {@link #UNLIMITED}.
+	 */
+	public int getMaximumNodes() {
+		return maximumNodes;
+	}
+
+	public static class Builder {
+		private String resultOntologyPrefix = RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX;
+		private ExecutorService executorService;
+		private IndexStrategy indexStrategy = IndexStrategy.AUTO;
+		private VocabularyCache vocabularyCache;
+		private OutputCache outputCache;
+		private boolean lazyNameResolution;
+		private int maximumNodes = UNLIMITED;
+
+		private Builder() {
+		}
+
+		public Builder resultOntologyPrefix(String resultOntologyPrefix) {
+			if (resultOntologyPrefix == null)
+				throw new IllegalArgumentException("The result ontology prefix cannot be null");
+			this.resultOntologyPrefix = resultOntologyPrefix;
+			return this;
+		}
+
+		/**
+		 * Expands the nodes of lists and trees in parallel, using the given
+		 * executor. The tree is identical to one generated sequentially. The
+		 * executor is not shut down by the generator.
+		 */
+		public Builder executorService(ExecutorService executorService) {
+			this.executorService = executorService;
+			return this;
+		}
+
+		public Builder indexStrategy(IndexStrategy indexStrategy) {
+			if (indexStrategy == null)
+				throw new IllegalArgumentException("The index strategy cannot be null");
+			this.indexStrategy = indexStrategy;
+			return this;
+		}
+
+		/**
+		 * Resolves names using vocabularies from the given cache, which may be
+		 * shared with other generators and threads.
+		 */
+		public Builder vocabularyCache(VocabularyCache vocabularyCache) {
+			this.vocabularyCache = vocabularyCache;
+			return this;
+		}
+
+		/**
+		 * Caches the JSON, XML and HTML generated by
+		 * {@link RdfTreeGenerator#generateJson(com.hp.hpl.jena.rdf.model.Model)} and the
+		 * other <code>generate</code> methods that return output, so that a model that
+		 * has been converted before is not converted again. The cache may be
+		 * shared with other generators and threads.
+		 */
+		public Builder outputCache(OutputCache outputCache) {
+			this.outputCache = outputCache;
+			return this;
+		}
+
+		/**
+		 * Names only the terms reached by a tree, rather than every term in the
+		 * model. See {@link NameResolver#NameResolver(com.hp.hpl.jena.rdf.model.Model, java.util.List, java.util.Map, String, boolean)}.
+		 */
+		public Builder lazyNameResolution(boolean lazyNameResolution) {
+			this.lazyNameResolution = lazyNameResolution;
+			return this;
+		}
+
+		public Builder maximumNodes(int maximumNodes) {
+			if (maximumNodes < 0 && maximumNodes != UNLIMITED)
+				throw new IllegalArgumentException("The maximum number of nodes cannot be negative: " + maximumNodes);
+			this.maximumNodes = maximumNodes;
+			return this;
+		}
+
+		public RdfTreeGeneratorOptions build() {
+			if (indexStrategy == IndexStrategy.MODEL && executorService != null)
+				throw new IllegalArgumentException("The model cannot be queried from more than one thread, so parallel generation requires an index");
+			return new RdfTreeGeneratorOptions(this);
+		}
+	}
+
+}
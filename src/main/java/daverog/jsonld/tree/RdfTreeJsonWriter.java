@@ -1,62 +1,98 @@
 package daverog.jsonld.tree;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.Resource;
 
 import daverog.jsonld.tree.NameResolver.TypedResource;
 
-import javax.annotation.Nullable;
-
 
 public class RdfTreeJsonWriter {
-		
+
+	private final WriterOptions options;
+
+	public RdfTreeJsonWriter() {
+		this(WriterOptions.DEFAULT);
+	}
+
+	public RdfTreeJsonWriter(WriterOptions options) {
+		this.options = options;
+	}
+
 	public String asJson(RdfTree tree) {
+		StringWriter output = new StringWriter();
+		try {
+			writeJson(tree, output);
+		} catch (IOException e) {
+			throw new RuntimeException("Error during JSON serialisation");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Writes the tree as JSON-LD directly to the given writer, producing
+	 * exactly the same output as {@link #asJson(RdfTree)} without holding
+	 * an intermediate copy of the document in memory.
+	 *
+	 * The writer is flushed but not closed.
+	 */
+	public void writeJson(RdfTree tree, Writer output) throws IOException {
 		tree.canonicalise();
-		
+
 		if (tree.isEmpty()) {
-			return "{}";
-		} if (tree.isList()) {
-			LinkedHashMap<String, Object> json = Maps.newLinkedHashMap();
-			
-			List<Object> list = Lists.newArrayList();
-			populateJsonArray(tree, list);
-            json.put("totalResults", tree.getTotalResults());
-			json.put("results", list);
-			
-            SortedMap<String, SortedMap<String, String>> nameUriMap = Maps.newTreeMap(getPrefixedNameUriMap(tree));
-            nameUriMap.put("results", new TreeMap(ImmutableMap.of("@id", "@graph")));
+			output.write("{}");
+			output.flush();
+			return;
+		}
 
-			json.put("@context", nameUriMap);
-			
-			Gson gson = new GsonBuilder().setPrettyPrinting().create();
-			return gson.toJson(json);
+		JsonWriter json = createJsonWriter(output, options);
+		JsonLdContext context = tree.getNameResolver().getJsonLdContext();
+		if (tree.isList()) {
+			writeJsonList(tree, json);
+			writeContext(context.getListContext(options), json, output);
 		} else {
-			LinkedHashMap<String, Object> json = Maps.newLinkedHashMap();
-			populateJsonObject(tree, json);
-			Gson gson = new GsonBuilder()
-				.setPrettyPrinting()
-				.create();
-			return gson.toJson(json);
+			json.beginObject();
+			writeJsonObjectEntries(tree, json);
+			writeContext(context.getItemContext(options), json, output);
 		}
+		json.endObject();
+		json.flush();
 	}
-	
-	private void populateJsonArray(RdfTree tree, List<Object> array) {
+
+	/**
+	 * Configured to match the pretty-printing Gson instance this writer
+	 * has always used: HTML-safe escaping and null values omitted, with
+	 * the indentation of the options (two spaces by default). An empty
+	 * indent writes compact JSON.
+	 */
+	static JsonWriter createJsonWriter(Writer output, WriterOptions options) {
+		JsonWriter json = new JsonWriter(output);
+		json.setIndent(options.getIndent());
+		json.setHtmlSafe(true);
+		json.setSerializeNulls(false);
+		return json;
+	}
+
+	private void writeJsonList(RdfTree tree, JsonWriter json) throws IOException {
+		json.beginObject();
+		json.name("totalResults").value(tree.getTotalResults());
+
+		json.name("results").beginArray();
 		for (RdfTree childTree: tree.getChildren()) {
-			LinkedHashMap<String, Object> arrayItem = Maps.newLinkedHashMap();
-			populateJsonObject(childTree, arrayItem);
-			array.add(arrayItem);
+			writeJsonObject(childTree, json);
 		}
+		json.endArray();
 	}
-	
+
 	private String getName(RdfTree tree, Resource resource) {
 		String name = tree.getNameResolver().getName(resource);
 		if (name.equals("type")) name = "@type";
@@ -64,73 +100,92 @@ public class RdfTreeJsonWriter {
 		return name;
 	}
 
-	private void populateJsonObject(RdfTree tree, LinkedHashMap<String, Object> json) {
-		json.put("@id", tree.getNode().asResource().getURI());
-		
+	private void writeJsonObject(RdfTree tree, JsonWriter json) throws IOException {
+		json.beginObject();
+		writeJsonObjectEntries(tree, json);
+		json.endObject();
+	}
+
+	private void writeJsonObjectEntries(RdfTree tree, JsonWriter json) throws IOException {
+		json.name("@id").value(tree.getNode().asResource().getURI());
+
+		// Canonical ordering places every inverse predicate after the forward ones,
+		// so the @reverse object can be written once the forward predicates are done.
+		// A HashMap keeps the key order of the @reverse object as it has always been.
+		Map<String, List<RdfTree>> reverse = Maps.newHashMap();
 		for (List<RdfTree> childTrees: getGroupedChildren(tree).values()) {
 			if (!childTrees.isEmpty()) {
 				RdfTree firstChildTree = childTrees.get(0);
-				
-				if (childTrees.size() == 1) {
-					if (firstChildTree.isChildlessResource()) {
-						if (firstChildTree.getPredicate() != null && firstChildTree.getPredicate().getURI().equals(RdfTree.RDF_TYPE)) {
-							addPredicateValue(json, tree, firstChildTree, Lists.newArrayList(getName(tree, firstChildTree.getNode().asResource())));
-						} else {
-							addPredicateValue(json, tree, firstChildTree, getName(tree, firstChildTree.getNode().asResource()));
-						}
-					} else if (firstChildTree.getNode().isResource()) {
-						LinkedHashMap<String, Object> child = Maps.newLinkedHashMap();
-						populateJsonObject(firstChildTree, child);
-						ArrayList<Object> array = Lists.newArrayList((Object)child);
-						addPredicateValue(json, tree, firstChildTree, array);
-					} else {
-						addPredicateValue(json, tree, firstChildTree, convertToJsonLiteral(firstChildTree.getNode().asLiteral()));
-					}
+				String predicateName = getName(tree, firstChildTree.getPredicate());
+				if (firstChildTree.isInverse()) {
+					reverse.put(predicateName, childTrees);
 				} else {
-					ArrayList<Object> array = Lists.newArrayList();
-					for (RdfTree childTree: childTrees) {
-						if (childTree.isChildlessResource()) {
-							array.add(getName(tree, childTree.getNode().asResource()));
-						} else if (childTree.getNode().isResource()) {
-							LinkedHashMap<String, Object> child = Maps.newLinkedHashMap();
-							populateJsonObject(childTree, child);
-							array.add(child);
-						} else {
-							array.add(convertToJsonLiteral(childTree.getNode().asLiteral()));
-						}
-					}
-					addPredicateValue(json, tree, firstChildTree, array);
+					json.name(predicateName);
+					writePredicateValue(tree, childTrees, json);
 				}
 			}
 		}
-		
-		SortedMap<String, SortedMap<String, String>> nameUriMap = getPrefixedNameUriMap(tree);
-		if (tree.isRoot() && !nameUriMap.isEmpty()) {
-			json.put("@context", nameUriMap);
+
+		if (!reverse.isEmpty()) {
+			json.name("@reverse").beginObject();
+			for (Map.Entry<String, List<RdfTree>> entry: reverse.entrySet()) {
+				json.name(entry.getKey());
+				writePredicateValue(tree, entry.getValue(), json);
+			}
+			json.endObject();
 		}
 	}
 
-	private void addPredicateValue(LinkedHashMap<String, Object> json,
-			RdfTree tree, RdfTree childTree, Object value) {
-		String predicateName = getName(tree, childTree.getPredicate());
-		if (childTree.isInverse()) {
-			@SuppressWarnings({ "unchecked", "rawtypes" })
-			Map<String, Object> reverse = (Map)json.get("@reverse");
-			if (reverse == null) {
-				reverse = Maps.<String, Object>newHashMap();
-				json.put("@reverse", reverse);
+	private void writePredicateValue(RdfTree tree, List<RdfTree> childTrees, JsonWriter json) throws IOException {
+		RdfTree firstChildTree = childTrees.get(0);
+
+		if (childTrees.size() == 1) {
+			if (firstChildTree.isChildlessResource()) {
+				if (firstChildTree.getPredicate() != null && firstChildTree.getPredicate().getURI().equals(RdfTree.RDF_TYPE)) {
+					json.beginArray();
+					json.value(getName(tree, firstChildTree.getNode().asResource()));
+					json.endArray();
+				} else {
+					json.value(getName(tree, firstChildTree.getNode().asResource()));
+				}
+			} else if (firstChildTree.getNode().isResource()) {
+				json.beginArray();
+				writeJsonObject(firstChildTree, json);
+				json.endArray();
+			} else {
+				writeJsonLiteral(firstChildTree.getNode().asLiteral(), json);
 			}
-			reverse.put(predicateName, value);
 		} else {
-			json.put(predicateName, value);
+			json.beginArray();
+			for (RdfTree childTree: childTrees) {
+				if (childTree.isChildlessResource()) {
+					json.value(getName(tree, childTree.getNode().asResource()));
+				} else if (childTree.getNode().isResource()) {
+					writeJsonObject(childTree, json);
+				} else {
+					writeJsonLiteral(childTree.getNode().asLiteral(), json);
+				}
+			}
+			json.endArray();
 		}
 	}
 
-	private Object convertToJsonLiteral(Literal literal) {
+	private void writeJsonLiteral(Literal literal, JsonWriter json) throws IOException {
 		if (Number.class.isAssignableFrom(literal.getValue().getClass())) {
-			return literal.getValue();
+			json.value((Number) literal.getValue());
+		} else {
+			json.value(literal.getLexicalForm());
 		}
-		return literal.getLexicalForm();
+	}
+
+	/**
+	 * Copies the pre-rendered context into the output as the last entry of
+	 * the outermost object, which the JSON writer then closes as usual.
+	 */
+	private void writeContext(String renderedContext, JsonWriter json, Writer output) throws IOException {
+		if (renderedContext.isEmpty()) return;
+		json.flush();
+		output.write(renderedContext);
 	}
 
 	public Map<DirectionalPredicate, List<RdfTree>> getGroupedChildren(RdfTree tree) {
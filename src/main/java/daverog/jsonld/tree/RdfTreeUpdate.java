@@ -0,0 +1,487 @@
+package daverog.jsonld.tree;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * Brings a tree up to date, in place, with the changes made to the model it
+ * was generated from, when the result is exactly the tree a full generation
+ * from the changed model would give.
+ *
+ * Generation expands the tree breadth first, so rule 5 only ever lets inverse
+ * statements be followed from the root of the tree or of a list item, and
+ * every other rule depends only on the path to a node. The children of a node
+ * then depend only on its own statements and its path, so a statement added or
+ * removed changes only the children it gives the places its subject appears,
+ * and, inversely, the roots where its object appears. Those children, with
+ * the subtrees below new ones, are all that is changed.
+ *
+ * The update is planned, with any new subtrees built apart from the tree,
+ * before anything is changed, and is not applied when it cannot give exactly
+ * the tree generation would: when a change is to a statement of the RDF Result
+ * ontology or a value the list is ordered by, when a name would change, or
+ * when the order of the children of a changed node would depend on the order
+ * in which the statements are found. With names resolved lazily, only literal
+ * values are changed in place.
+ */
+class RdfTreeUpdate {
+
+	private final RdfTree tree;
+	private final Model model;
+	private final ResultOntology resultOntology;
+	private final int maximumNodes;
+	private final StatementSource statementSource;
+	private final NameResolver nameResolver;
+	private TreeIndex index;
+
+	// The plan: the trees removed and added, the children of the trees whose children
+	// change and of the new trees, the statement each new tree follows, and new types
+	private final List<RdfTree> removedTrees = Lists.newArrayList();
+	private final Set<RdfTree> allRemovedTrees = Sets.newIdentityHashSet();
+	private final List<RdfTree> addedTrees = Lists.newArrayList();
+	private final Map<RdfTree, List<RdfTree>> plannedChildren = Maps.newIdentityHashMap();
+	private final Map<RdfTree, Statement> newTreeStatements = Maps.newIdentityHashMap();
+	private final Map<RdfTree, Resource> plannedTypes = Maps.newIdentityHashMap();
+	private int nodeCount;
+
+	RdfTreeUpdate(RdfTree tree, Model model, ResultOntology resultOntology, int maximumNodes) {
+		this.tree = tree;
+		this.model = model;
+		this.resultOntology = resultOntology;
+		this.maximumNodes = maximumNodes;
+		this.statementSource = new ModelStatementSource(model);
+		this.nameResolver = tree.getNameResolver();
+	}
+
+	/**
+	 * The number of nodes the tree will have, counted as generation counts them
+	 */
+	int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Plans the changes to the tree, without changing it, returning whether
+	 * applying them gives the tree a full generation would. When it does not,
+	 * the tree should be generated again. Planning stops as soon as the tree
+	 * would have more than the maximum number of nodes.
+	 */
+	boolean plan(ModelChanges changes) {
+		if (!changes.isComplete() || tree.isEmpty()) return false;
+		index = tree.getUpdateIndex();
+		if (index == null) index = new TreeIndex(tree);
+		nodeCount = index.nodeCount;
+
+		Set<RDFNode> orderingPredicates = model.listObjectsOfProperty(resultOntology.thisResource, resultOntology.orderByPredicate).toSet();
+		Set<Resource> retypedResources = Sets.newHashSet();
+		Multiset<Property> removedPredicates = HashMultiset.create();
+		for (Statement statement : changes.getRemovedStatements()) {
+			if (model.contains(statement)) continue;
+			if (!isFollowable(statement, orderingPredicates)) return false;
+			if (!nameResolver.isLazy() && !isStillNamed(statement)) return false;
+			if (!reachesTree(statement)) continue;
+			if (nameResolver.isLazy() && !isLiteralValue(statement)) return false;
+
+			for (RdfTree occurrence : index.getOccurrences(statement.getSubject())) {
+				RdfTree child = findChild(occurrence, statement, false);
+				if (child != null) {
+					planRemoval(child);
+					removedPredicates.add(statement.getPredicate());
+				}
+			}
+			for (RdfTree occurrence : getInverseOccurrences(statement)) {
+				RdfTree child = findChild(occurrence, statement, true);
+				if (child != null) planRemoval(child);
+			}
+			if (isType(statement)) retypedResources.add(statement.getSubject());
+		}
+		planRemovedChildren();
+		if (nameResolver.isLazy()) {
+			for (Property predicate : removedPredicates.elementSet()) {
+				if (!isNamedAsBefore(predicate, removedPredicates.count(predicate))) return false;
+			}
+		}
+
+		for (Statement statement : changes.getAddedStatements()) {
+			if (!model.contains(statement)) continue;
+			if (!isFollowable(statement, orderingPredicates)) return false;
+			if (!nameResolver.isLazy() && !nameResolver.wouldKeepNames(statement)) return false;
+			if (!reachesTree(statement)) continue;
+			if (nameResolver.isLazy() && (!isLiteralValue(statement) || !isNamedAsBefore(statement.getPredicate(), 0))) return false;
+
+			for (RdfTree occurrence : index.getOccurrences(statement.getSubject())) {
+				if (!planAddition(occurrence, statement)) return true;
+			}
+			for (RdfTree occurrence : getInverseOccurrences(statement)) {
+				if (!planAddition(occurrence, statement)) return true;
+			}
+			if (isType(statement)) retypedResources.add(statement.getSubject());
+		}
+
+		for (Resource resource : retypedResources) {
+			Resource type = getType(resource);
+			for (RdfTree occurrence : index.getOccurrences(resource)) {
+				if (!isRemoved(occurrence) && !equal(type, occurrence.getType())) plannedTypes.put(occurrence, type);
+			}
+		}
+
+		return hasStrictChildOrders();
+	}
+
+	/**
+	 * Applies the planned changes to the tree, which is then the tree a full
+	 * generation would give.
+	 */
+	void apply() {
+		for (RdfTree removedTree : removedTrees) {
+			removedTree.getParent().removeChild(removedTree);
+			index.remove(removedTree);
+		}
+		for (RdfTree addedTree : addedTrees) {
+			addNewTree(addedTree);
+			index.add(addedTree);
+		}
+		for (Map.Entry<RdfTree, Resource> plannedType : plannedTypes.entrySet()) {
+			plannedType.getKey().setType(plannedType.getValue());
+		}
+		tree.canonicalise();
+		tree.setUpdateIndex(index);
+	}
+
+	/**
+	 * Whether the statement is one that the tree may follow, rather than one
+	 * of the RDF Result ontology, which says which resources the tree holds,
+	 * or a value the list is ordered by.
+	 */
+	private boolean isFollowable(Statement statement, Set<RDFNode> orderingPredicates) {
+		return !ResultOntology.is(statement.getSubject(), resultOntology.thisResource)
+				&& !ResultOntology.is(statement.getSubject(), resultOntology.metaResource)
+				&& !resultOntology.isInNamespace(statement.getPredicate())
+				&& !orderingPredicates.contains(statement.getPredicate());
+	}
+
+	private boolean reachesTree(Statement statement) {
+		return index.occurrences.containsKey(statement.getSubject()) || index.occurrences.containsKey(statement.getObject());
+	}
+
+	/**
+	 * Whether the statement gives a resource a literal value, which is a leaf
+	 * of the tree wherever it appears, and registers no term but its predicate.
+	 */
+	private boolean isLiteralValue(Statement statement) {
+		return statement.getObject().isLiteral() && !isType(statement);
+	}
+
+	private boolean isType(Statement statement) {
+		return statement.getPredicate().getURI().equals(RdfTree.RDF_TYPE);
+	}
+
+	/**
+	 * Whether every term of a removed statement that can be named is still in
+	 * the model, so that an eager resolver would name it as before. Each term
+	 * is registered with one type, unless the names depend on order, which the
+	 * generator checks in full.
+	 */
+	private boolean isStillNamed(Statement statement) {
+		if (!isStillInModel(statement.getSubject()) || !isStillInModel(statement.getPredicate())) return false;
+		return !statement.getObject().isResource() || isStillInModel(statement.getObject().asResource());
+	}
+
+	private boolean isStillInModel(Resource resource) {
+		if (!nameResolver.canBeNamed(resource)) return true;
+		return model.contains(resource, null, (RDFNode) null)
+				|| model.contains(null, null, resource)
+				|| model.contains(null, model.getProperty(resource.getURI()), (RDFNode) null);
+	}
+
+	/**
+	 * Whether a lazy resolver would name the predicate as it does now, once
+	 * children for it are added or removed. A predicate only followed to
+	 * literals is named the same way by each of them, so it is named as before
+	 * while any such child remains; a predicate also followed to resources may
+	 * be named by whichever child is added first.
+	 */
+	private boolean isNamedAsBefore(Property predicate, int removedChildren) {
+		if (!nameResolver.canBeNamed(predicate)) return true;
+		return nameResolver.isNamed(predicate)
+				&& !index.predicatesFollowedToResources.contains(predicate)
+				&& index.followedPredicates.count(predicate) > removedChildren;
+	}
+
+	/**
+	 * The roots, of the tree or of list items, where the object of the statement
+	 * appears, which are the only nodes that follow statements inversely
+	 */
+	private List<RdfTree> getInverseOccurrences(Statement statement) {
+		if (!statement.getObject().isResource() || statement.getObject().equals(statement.getSubject())) return Collections.emptyList();
+		List<RdfTree> inverseOccurrences = Lists.newArrayList();
+		for (RdfTree occurrence : index.getOccurrences(statement.getObject())) {
+			if (isExpansionRoot(occurrence)) inverseOccurrences.add(occurrence);
+		}
+		return inverseOccurrences;
+	}
+
+	/**
+	 * Whether rule 5 lets the node follow inverse statements. Generation adds
+	 * the children of each depth before expanding any of them, so a node below
+	 * a root has always been recorded at a depth no deeper than its own, and
+	 * the rule stops it following any inverse statement.
+	 */
+	private boolean isExpansionRoot(RdfTree occurrence) {
+		return occurrence.getParent() == null || occurrence.getPredicate() == null;
+	}
+
+	private RdfTree findChild(RdfTree occurrence, Statement statement, boolean inverse) {
+		RDFNode childNode = inverse ? statement.getSubject() : statement.getObject();
+		for (RdfTree child : occurrence.getChildren()) {
+			if (child.isInverse() == inverse && statement.getPredicate().equals(child.getPredicate()) && childNode.equals(child.getNode())) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	private void planRemoval(RdfTree child) {
+		if (allRemovedTrees.add(child)) removedTrees.add(child);
+	}
+
+	private boolean isRemoved(RdfTree occurrence) {
+		for (RdfTree ancestor = occurrence; ancestor != null; ancestor = ancestor.getParent()) {
+			if (allRemovedTrees.contains(ancestor)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Plans the child the statement gives the occurrence, if it follows it,
+	 * and the subtree below it, returning false once the tree has more than
+	 * the maximum number of nodes.
+	 */
+	private boolean planAddition(RdfTree occurrence, Statement statement) {
+		if (isRemoved(occurrence) || !canFollow(occurrence, statement)) return true;
+		if (findChild(occurrence, statement, !statement.getSubject().equals(occurrence.getNode())) != null) return true;
+
+		RdfTree child = createChild(occurrence, statement);
+		addedTrees.add(child);
+		getPlannedChildren(occurrence).add(child);
+		return expand(child);
+	}
+
+	private boolean canFollow(RdfTree occurrence, Statement statement) {
+		boolean inverse = !statement.getSubject().equals(occurrence.getNode());
+		return occurrence.canFollow(statement) && (!inverse || isExpansionRoot(occurrence));
+	}
+
+	private RdfTree createChild(RdfTree parent, Statement statement) {
+		RdfTree child = parent.createFollowedChild(statement);
+		newTreeStatements.put(child, statement);
+		nodeCount++;
+		return child;
+	}
+
+	/**
+	 * Builds the subtree below a new node, breadth first, as generation would,
+	 * without adding it to the tree. A new node is never a root, so it follows
+	 * only the statements of which it is the subject.
+	 */
+	private boolean expand(RdfTree newTree) {
+		LinkedList<RdfTree> trees = Lists.newLinkedList();
+		trees.add(newTree);
+		while (!trees.isEmpty()) {
+			RdfTree current = trees.removeFirst();
+			List<RdfTree> children = Lists.newArrayList();
+			plannedChildren.put(current, children);
+			if (!current.getNode().isResource()) continue;
+
+			Resource resource = current.getNode().asResource();
+			Resource type = getType(resource);
+			if (type != null) plannedTypes.put(current, type);
+			for (Statement statement : statementSource.getStatementsWithSubject(resource)) {
+				if (!resultOntology.isInNamespace(statement.getPredicate()) && current.canFollow(statement)) {
+					RdfTree child = createChild(current, statement);
+					children.add(child);
+					trees.add(child);
+				}
+			}
+			if (maximumNodes != RdfTreeGeneratorOptions.UNLIMITED && nodeCount > maximumNodes) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The type generation gives a resource, when it has exactly one
+	 */
+	private Resource getType(Resource resource) {
+		List<RDFNode> types = statementSource.getTypes(resource);
+		return types.size() == 1 ? types.get(0).asResource() : null;
+	}
+
+	/**
+	 * Drops the removals from trees that are removed themselves, and plans the
+	 * children of the trees that lose any.
+	 */
+	private void planRemovedChildren() {
+		for (RdfTree removedTree : Lists.newArrayList(removedTrees)) {
+			if (isRemoved(removedTree.getParent())) {
+				removedTrees.remove(removedTree);
+			} else {
+				nodeCount -= countNodes(removedTree);
+				getPlannedChildren(removedTree.getParent()).remove(removedTree);
+			}
+		}
+	}
+
+	private List<RdfTree> getPlannedChildren(RdfTree changedTree) {
+		List<RdfTree> children = plannedChildren.get(changedTree);
+		if (children == null) {
+			children = Lists.newArrayList(changedTree.getChildren());
+			plannedChildren.put(changedTree, children);
+		}
+		return children;
+	}
+
+	private List<RdfTree> getChildrenAfterUpdate(RdfTree tree) {
+		List<RdfTree> children = plannedChildren.get(tree);
+		return children == null ? tree.getChildren() : children;
+	}
+
+	private boolean isChildlessResourceAfterUpdate(RdfTree tree) {
+		return tree.getNode().isResource() && getChildrenAfterUpdate(tree).isEmpty();
+	}
+
+	/**
+	 * Whether the children of every changed or new tree, and of the parent of
+	 * every tree that gains its first child or loses its last, will be in an
+	 * order that does not depend on the order the statements are found in.
+	 */
+	private boolean hasStrictChildOrders() {
+		Map<Property, ChildSortKey.PredicateName> predicateNames = Maps.newHashMap();
+		for (RdfTree changedTree : plannedChildren.keySet()) {
+			if (!hasStrictChildOrder(changedTree, predicateNames)) return false;
+			if (newTreeStatements.containsKey(changedTree)) continue;
+			if (changedTree.isChildlessResource() != isChildlessResourceAfterUpdate(changedTree)
+					&& changedTree.getParent() != null && !hasStrictChildOrder(changedTree.getParent(), predicateNames)) return false;
+		}
+		return true;
+	}
+
+	private boolean hasStrictChildOrder(RdfTree changedTree, Map<Property, ChildSortKey.PredicateName> predicateNames) {
+		List<RdfTree> children = getChildrenAfterUpdate(changedTree);
+		if (changedTree.isList() || children.size() < 2) return true;
+		List<ChildSortKey> sortKeys = Lists.newArrayListWithCapacity(children.size());
+		for (RdfTree child : children) {
+			sortKeys.add(new ChildSortKey(child, isChildlessResourceAfterUpdate(child), nameResolver, predicateNames));
+		}
+		return ChildSortKey.isStrictOrder(sortKeys);
+	}
+
+	private int countNodes(RdfTree subtree) {
+		int count = 1;
+		for (RdfTree child : subtree.getChildren()) {
+			count += countNodes(child);
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a new tree and the subtree planned below it, breadth first, as
+	 * generation does, marking each node as constructed once its children are added.
+	 */
+	private void addNewTree(RdfTree newTree) {
+		newTree.getParent().addCreatedChild(newTree, newTreeStatements.get(newTree));
+		LinkedList<RdfTree> trees = Lists.newLinkedList();
+		trees.add(newTree);
+		while (!trees.isEmpty()) {
+			RdfTree current = trees.removeFirst();
+			for (RdfTree child : plannedChildren.get(current)) {
+				current.addCreatedChild(child, newTreeStatements.get(child));
+				trees.add(child);
+			}
+			current.markAsConstructed();
+		}
+	}
+
+	private static boolean equal(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
+	}
+
+	/**
+	 * Where each resource appears in a tree, which predicates its children
+	 * follow, and how many nodes it has. It is built by the first update of a
+	 * tree and kept up to date by each update after it, so an update looks at
+	 * no more of the tree than it changes.
+	 */
+	static class TreeIndex {
+		private final Map<RDFNode, List<RdfTree>> occurrences = Maps.newHashMap();
+		private final Multiset<Property> followedPredicates = HashMultiset.create();
+		private final Multiset<Property> predicatesFollowedToResources = HashMultiset.create();
+		private int nodeCount;
+
+		private TreeIndex(RdfTree tree) {
+			add(tree);
+		}
+
+		private List<RdfTree> getOccurrences(RDFNode node) {
+			List<RdfTree> occurrencesOfNode = occurrences.get(node);
+			if (occurrencesOfNode == null) return Collections.emptyList();
+			return occurrencesOfNode;
+		}
+
+		private void add(RdfTree subtree) {
+			List<RdfTree> trees = Lists.newArrayList(subtree);
+			while (!trees.isEmpty()) {
+				RdfTree current = trees.remove(trees.size() - 1);
+				trees.addAll(current.getChildren());
+				if (current.getNode() == null) continue;
+
+				nodeCount++;
+				if (current.getNode().isResource()) {
+					List<RdfTree> occurrencesOfNode = occurrences.get(current.getNode());
+					if (occurrencesOfNode == null) {
+						occurrencesOfNode = Lists.newArrayListWithCapacity(1);
+						occurrences.put(current.getNode(), occurrencesOfNode);
+					}
+					occurrencesOfNode.add(current);
+				}
+				if (current.getPredicate() != null) {
+					followedPredicates.add(current.getPredicate());
+					if (current.isInverse() || current.getNode().isResource()) predicatesFollowedToResources.add(current.getPredicate());
+				}
+			}
+		}
+
+		private void remove(RdfTree subtree) {
+			List<RdfTree> trees = Lists.newArrayList(subtree);
+			while (!trees.isEmpty()) {
+				RdfTree current = trees.remove(trees.size() - 1);
+				trees.addAll(current.getChildren());
+
+				nodeCount--;
+				if (current.getNode().isResource()) {
+					List<RdfTree> occurrencesOfNode = occurrences.get(current.getNode());
+					occurrencesOfNode.remove(current);
+					if (occurrencesOfNode.isEmpty()) occurrences.remove(current.getNode());
+				}
+				if (current.getPredicate() != null) {
+					followedPredicates.remove(current.getPredicate());
+					if (current.isInverse() || current.getNode().isResource()) predicatesFollowedToResources.remove(current.getPredicate());
+				}
+			}
+		}
+	}
+
+}
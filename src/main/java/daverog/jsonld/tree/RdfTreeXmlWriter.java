@@ -3,159 +3,222 @@ package daverog.jsonld.tree;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URLEncoder;
+import java.util.Map;
 
-import org.dom4j.Branch;
-import org.dom4j.Document;
-import org.dom4j.DocumentHelper;
-import org.dom4j.Element;
-import org.dom4j.QName;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.XMLWriter;
-
-import com.hp.hpl.jena.rdf.model.Resource;
+import com.google.common.collect.Maps;
 
 public class RdfTreeXmlWriter {
+
+	private final WriterOptions options;
+
+	public RdfTreeXmlWriter() {
+		this(WriterOptions.DEFAULT);
+	}
+
+	public RdfTreeXmlWriter(WriterOptions options) {
+		this.options = options;
+	}
 	
 	public String asXml(RdfTree tree) {
-		if (tree.isEmpty()) return "<List/>";
-		
+		StringWriter output = new StringWriter();
+		try {
+			writeXml(tree, output);
+		} catch (IOException e) {
+			throw new RuntimeException("Error during XML serialisation");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Writes the tree as XML directly to the given writer, element by element,
+	 * producing exactly the same output as {@link #asXml(RdfTree)}.
+	 *
+	 * The writer is flushed but not closed.
+	 */
+	public void writeXml(RdfTree tree, Writer output) throws IOException {
+		if (tree.isEmpty()) {
+			output.write("<List/>");
+			output.flush();
+			return;
+		}
+
 		tree.canonicalise();
 
-		Document document = DocumentHelper.createDocument();
-		
+		XmlStreamWriter xml = new XmlStreamWriter(output, options);
 		if (tree.isList()) {
-			populateXmlList(tree, document);
+			writeXmlList(tree, xml);
 		} else {
-			populateXml(tree, document, document);
+			writeXmlItem(tree, xml);
 		}
-		
-		return generateXml(document);
+		xml.flush();
 	}
 	
 	public String asHtml(RdfTree tree, String relativeUrlBase) {
-		if (tree.isEmpty()) return "<html><body>No data</body></html>";
+		StringWriter output = new StringWriter();
+		try {
+			writeHtml(tree, relativeUrlBase, output);
+		} catch (IOException e) {
+			throw new RuntimeException("Error during XML serialisation");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Writes the tree as HTML directly to the given writer, element by element,
+	 * producing exactly the same output as {@link #asHtml(RdfTree, String)}.
+	 *
+	 * The writer is flushed but not closed.
+	 */
+	public void writeHtml(RdfTree tree, String relativeUrlBase, Writer output) throws IOException {
+		if (tree.isEmpty()) {
+			output.write("<html><body>No data</body></html>");
+			output.flush();
+			return;
+		}
 		
 		tree.canonicalise();
-		Document document = DocumentHelper.createDocument();
+		XmlStreamWriter html = new XmlStreamWriter(output, options);
+		Links links = new Links(relativeUrlBase);
 		
-		Element html = document.addElement(new QName("html"));
-		Element body = html.addElement(new QName("body"));
+		html.startElement("html");
+		html.startElement("body");
 
         if (tree.getTotalResults() != null) {
-            Element div = body.addElement("div");
+            html.startElement("div");
 
-            Element a = div.addElement("a");
-            a.addAttribute("href", createRelativeLinkToResource("http://purl.org/ontology/rdf-result/totalResults", relativeUrlBase));
-            a.addAttribute("title", "totalResults");
-            a.addAttribute("style", "font-weight: bold;");
-            a.addText("totalResults:");
+            html.startElement("a");
+            html.attribute("href", links.getHref("http://purl.org/ontology/rdf-result/totalResults"));
+            html.attribute("title", "totalResults");
+            html.attribute("style", "font-weight: bold;");
+            html.text("totalResults:");
+            html.endElement();
 
-            Element span = div.addElement("span");
-            span.addText(tree.getTotalResults().toString());
+            html.startElement("span");
+            html.text(tree.getTotalResults().toString());
+            html.endElement();
+
+            html.endElement();
         }
 		
 		if (tree.isList()) {
-			populateHtmlList(tree, document, body, relativeUrlBase);
+			writeHtmlList(tree, html, links);
 		} else {
-			populateHtml(tree, document, body, relativeUrlBase);
+			writeHtmlItem(tree, html, links);
 		}
-		
-		return generateXml(document);
-	}
 
-	private String generateXml(Document document) {
-		StringWriter output = new StringWriter();
-		OutputFormat format = OutputFormat.createPrettyPrint();
-		format.setSuppressDeclaration(true);
-		format.setOmitEncoding(true);
-		format.setEncoding("UTF-8");
-		format.setNewLineAfterDeclaration(false);
-		format.setExpandEmptyElements(false);
-		XMLWriter writer = new XMLWriter(output, format);
-        try {
-			writer.write(document);
-		} catch (IOException e) {
-			throw new RuntimeException("Error during XML serialisation");
-		}
-        return output.toString().trim();
+		html.endElement();
+		html.endElement();
+		html.flush();
 	}
-	
-	private void populateXmlList(RdfTree tree, Document document) {
-		Element list = document.addElement(new QName("List"));
+
+	private void writeXmlList(RdfTree tree, XmlStreamWriter xml) throws IOException {
+		xml.startElement("List");
 
         Integer totalResults = tree.getTotalResults();
         if (totalResults != null) {
-            list.addAttribute("totalResults", totalResults.toString());
+            xml.attribute("totalResults", totalResults.toString());
         }
 		
 		for (RdfTree childTree: tree.getChildren()) {
-			populateXml(childTree, document, list);
+			writeXmlItem(childTree, xml);
 		}
+		xml.endElement();
 	}
 
-	private void populateXml(RdfTree tree, Document document, Branch branch) {
-        QName typeQName = tree.getType() == null ? new QName("Thing") : resourceAsQName(document, tree, tree.getType());
-   		Element root =  branch.addElement(typeQName);
-   		
-		root.addAttribute(new QName("id"), tree.getNameResolver().getName(tree.getNode().asResource()));
+	private void writeXmlItem(RdfTree tree, XmlStreamWriter xml) throws IOException {
+		xml.startElement(tree.getType() == null ? "Thing" : tree.getNameResolver().getName(tree.getType()));
+		xml.attribute("id", tree.getNameResolver().getName(tree.getNode().asResource()));
 
 		for (RdfTree childTree: tree.getChildren()) {
 			if (!childTree.isType()) {
-				QName predicateQName = resourceAsQName(document, tree, childTree.getPredicate());
-				document.getRootElement().add(predicateQName.getNamespace());
-				Element childElement = root.addElement(predicateQName);
-				if (childTree.isInverse()) childElement.addAttribute("inverse", "true");
+				xml.startElement(tree.getNameResolver().getName(childTree.getPredicate()));
+				if (childTree.isInverse()) xml.attribute("inverse", "true");
 				if (childTree.isChildlessResource()) {
-					childElement.addAttribute(new QName("id"), tree.getNameResolver().getName(childTree.getNode().asResource()));
+					xml.attribute("id", tree.getNameResolver().getName(childTree.getNode().asResource()));
 				} else if (childTree.getNode().isResource()) {
-					populateXml(childTree, document, childElement);
+					writeXmlItem(childTree, xml);
 				} else {
-					childElement.addText(childTree.getNode().asLiteral().getLexicalForm());
+					xml.text(childTree.getNode().asLiteral().getLexicalForm());
 				}
+				xml.endElement();
 			}
 		}
+		xml.endElement();
 	}
 	
-	private void populateHtmlList(RdfTree tree, Document document, Branch branch, String relativeUrlBase) {
-		Element list = branch.addElement("ol");
+	private void writeHtmlList(RdfTree tree, XmlStreamWriter html, Links links) throws IOException {
+		html.startElement("ol");
 		
 		for (RdfTree childTree: tree.getChildren()) {
-			Element listItem = list.addElement("li");
-			populateHtml(childTree, document, listItem, relativeUrlBase);
+			html.startElement("li");
+			writeHtmlItem(childTree, html, links);
+			html.endElement();
 		}
+		html.endElement();
 	}
 	
-	private void populateHtml(RdfTree tree, Document document, Branch branch, String relativeUrlBase) {
-		Element link =  branch.addElement("a");
-		link.addAttribute(new QName("href"), createRelativeLinkToResource(tree.getNode().asResource().getURI(), relativeUrlBase));
-		link.addAttribute(new QName("title"), tree.getNode().asResource().getURI());
-		if (tree.getNode().asResource().getURI() == null) link.addText("Result");
-		else link.addText(tree.getNameResolver().getName(tree.getNode().asResource()));
+	private void writeHtmlItem(RdfTree tree, XmlStreamWriter html, Links links) throws IOException {
+		String uri = tree.getNode().asResource().getURI();
+		html.startElement("a");
+		html.attribute("href", links.getHref(uri));
+		html.attribute("title", uri);
+		if (uri == null) html.text("Result");
+		else html.text(tree.getNameResolver().getName(tree.getNode().asResource()));
+		html.endElement();
 		if (!tree.getChildren().isEmpty()) {
-			Element children =  branch.addElement("ul");
+			html.startElement("ul");
 			for (RdfTree childTree: tree.getChildren()) {
-				Element childElement = children.addElement("li");
+				html.startElement("li");
 				String childName = tree.getNameResolver().getName(childTree.getPredicate());
-				Element predicate = childElement.addElement("a");
-				predicate.addAttribute(new QName("href"), createRelativeLinkToResource(childTree.getPredicate().getURI(), relativeUrlBase));
-				predicate.addAttribute(new QName("title"), childTree.getPredicate().getURI());
-				predicate.addText(childName + (childTree.isInverse() ? " (inverse)" : "") +  ":");
+				String predicateUri = childTree.getPredicate().getURI();
+				html.startElement("a");
+				html.attribute("href", links.getHref(predicateUri));
+				html.attribute("title", predicateUri);
 				String style = "font-weight: bold;";
 				if (childTree.isInverse()) style = style + " font-style: italic";
-    			predicate.addAttribute("style", style);
+				html.attribute("style", style);
+				html.text(childName + (childTree.isInverse() ? " (inverse)" : "") +  ":");
+				html.endElement();
 
-				Element value = childElement.addElement("span");
+				html.startElement("span");
 				if (childTree.getNode().isResource()) {
-					populateHtml(childTree, document, value, relativeUrlBase);
+					writeHtmlItem(childTree, html, links);
 				} else {
-					value.addText(childTree.getNode().asLiteral().getLexicalForm());
+					html.text(childTree.getNode().asLiteral().getLexicalForm());
 				}
+				html.endElement();
+				html.endElement();
 			}
+			html.endElement();
 		} 
 	}
 
-	private String createRelativeLinkToResource(String uri, String relativeUrlBase) {
+	/**
+	 * The links to resources written while rendering one tree. Each URI is
+	 * encoded only once, however many times it is linked to.
+	 */
+	private static class Links {
+		private final String relativeUrlBase;
+		private final Map<String, String> hrefs = Maps.newHashMap();
+
+		private Links(String relativeUrlBase) {
+			this.relativeUrlBase = relativeUrlBase;
+		}
+
+		private String getHref(String uri) {
+			if (uri == null) return null;
+			String href = hrefs.get(uri);
+			if (href == null) {
+				href = createRelativeLinkToResource(uri, relativeUrlBase);
+				hrefs.put(uri, href);
+			}
+			return href;
+		}
+	}
+
+	private static String createRelativeLinkToResource(String uri, String relativeUrlBase) {
 		if (uri == null) return null;
 		try {
 			return relativeUrlBase + URLEncoder.encode(uri, "UTF-8");
@@ -164,9 +227,4 @@ public class RdfTreeXmlWriter {
 		}
 	}
 
-	private QName resourceAsQName(Document document, RdfTree tree, Resource resource) {
-		return new QName(tree.getNameResolver().getName(resource));
-	}
-	
-
 }
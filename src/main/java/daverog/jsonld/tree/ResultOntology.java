@@ -0,0 +1,57 @@
+package daverog.jsonld.tree;
+
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.impl.Util;
+
+/**
+ * The terms of the RDF Result ontology, for a given ontology prefix, resolved
+ * once so that statements can be checked against them without building URIs.
+ * Immutable, and so safe to share between threads.
+ */
+class ResultOntology {
+
+	final String prefix;
+
+	final Resource thisResource;
+	final Resource metaResource;
+	final Property item;
+	final Property next;
+	final Property listItem;
+	final Property orderByPredicate;
+	final Property sortOrder;
+	final Property totalResults;
+	final Resource ascendingOrder;
+	final Resource descendingOrder;
+
+	ResultOntology(String prefix) {
+		this.prefix = prefix;
+		thisResource = ResourceFactory.createResource(prefix + "this");
+		metaResource = ResourceFactory.createResource(prefix + "meta");
+		item = ResourceFactory.createProperty(prefix + "item");
+		next = ResourceFactory.createProperty(prefix + "next");
+		listItem = ResourceFactory.createProperty(prefix + "listItem");
+		orderByPredicate = ResourceFactory.createProperty(prefix + "orderByPredicate");
+		sortOrder = ResourceFactory.createProperty(prefix + "sortOrder");
+		totalResults = ResourceFactory.createProperty(prefix + "totalResults");
+		ascendingOrder = ResourceFactory.createResource(prefix + "AscendingOrder");
+		descendingOrder = ResourceFactory.createResource(prefix + "DescendingOrder");
+	}
+
+	static boolean is(RDFNode node, RDFNode term) {
+		return node.asNode().equals(term.asNode());
+	}
+
+	/**
+	 * Whether the namespace of the property is the ontology prefix, as
+	 * {@link Resource#getNameSpace()} would split it. The split is only
+	 * worked out for the few URIs that start with the prefix.
+	 */
+	boolean isInNamespace(Property property) {
+		String uri = property.getURI();
+		return uri.startsWith(prefix) && Util.splitNamespace(uri) == prefix.length();
+	}
+
+}
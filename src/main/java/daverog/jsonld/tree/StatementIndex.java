@@ -0,0 +1,442 @@
+package daverog.jsonld.tree;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.n3.turtle.TurtleEventHandler;
+import com.hp.hpl.jena.n3.turtle.TurtleParseException;
+import com.hp.hpl.jena.n3.turtle.parser.ParseException;
+import com.hp.hpl.jena.n3.turtle.parser.TokenMgrError;
+import com.hp.hpl.jena.n3.turtle.parser.TurtleParser;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * An adjacency index of a model, built with a single pass over
+ * its statements, mapping every resource to the statements in which
+ * it is the subject, the statements in which it is the object and
+ * its types.
+ *
+ * Expanding a node of a tree using the index costs time proportional
+ * to the degree of the node, rather than three selector queries
+ * against the model.
+ *
+ * Terms are held once each in a dictionary and statements as arrays of
+ * term ids, grouped by subject and by object in compressed adjacency
+ * arrays, so the index holds no object per statement. The statements
+ * returned are created as they are asked for.
+ *
+ * The index is a snapshot: changes made to the model after it
+ * has been built are not reflected.
+ *
+ * An index can also be read directly from Turtle, with
+ * {@link #readTurtle(Reader)}, without building a model first.
+ */
+public class StatementIndex implements StatementSource {
+
+	private static final int NONE = -1;
+
+	private final Model model;
+
+	// The dictionaries of subjects and objects, and of predicates
+	private final Map<Node, Integer> nodeIds;
+	private final RDFNode[] nodes;
+	private final Property[] predicates;
+	private final int typePredicate;
+
+	// The terms of each statement, in the order they were added
+	private final int[] subjectIds;
+	private final int[] predicateIds;
+	private final int[] objectIds;
+
+	// The statements with each node as their subject are
+	// statementsBySubject[subjectOffsets[node]] to statementsBySubject[subjectOffsets[node + 1] - 1]
+	private final int[] subjectOffsets;
+	private final int[] statementsBySubject;
+	private final int[] objectOffsets;
+	private final int[] inverseStatementsByObject;
+
+	public StatementIndex(Model model) {
+		this(indexStatements(model, null));
+	}
+
+	private StatementIndex(Builder builder) {
+		this.model = builder.model;
+		this.nodeIds = builder.nodeIds;
+		this.nodes = builder.nodes.toArray(new RDFNode[builder.nodes.size()]);
+		this.predicates = builder.predicates.toArray(new Property[builder.predicates.size()]);
+		Integer typePredicate = builder.predicateIds.get(RdfTree.RDF_TYPE);
+		this.typePredicate = typePredicate == null ? NONE : typePredicate;
+
+		this.subjectIds = builder.subjectIds.toArray();
+		this.predicateIds = builder.predicateIdsOfStatements.toArray();
+		this.objectIds = builder.objectIds.toArray();
+
+		this.subjectOffsets = new int[nodes.length + 1];
+		this.statementsBySubject = groupStatements(subjectIds, subjectOffsets, false);
+		this.objectOffsets = new int[nodes.length + 1];
+		this.inverseStatementsByObject = groupStatements(objectIds, objectOffsets, true);
+	}
+
+	static Builder indexStatements(Model model, Terms terms) {
+		Builder builder = new Builder(model, terms);
+		StmtIterator statements = model.listStatements();
+		while (statements.hasNext()) {
+			builder.add(statements.nextStatement());
+		}
+		return builder;
+	}
+
+	/**
+	 * Reads an index from Turtle as it is parsed, so that no model, with
+	 * the indexes of a general purpose graph, is built along the way.
+	 *
+	 * The index describes the same statements and prefixes as the model
+	 * that {@link ModelUtils#createJenaModel(String)} would create, and
+	 * trees generated from it are the same, except that children the tree
+	 * does not order, such as the types of a resource with more than one,
+	 * keep the order in which they were parsed. Its {@link #getModel() model}
+	 * holds only the prefixes.
+	 */
+	public static StatementIndex readTurtle(Reader reader) {
+		Builder builder = new Builder(ModelFactory.createDefaultModel(), null);
+		TurtleParser parser = new TurtleParser(reader);
+		parser.setEventHandler(new TurtleIndexer(builder));
+		parser.setBaseURI(null);
+		try {
+			parser.parse();
+		} catch (ParseException e) {
+			throw new TurtleParseException(e.getMessage());
+		} catch (TokenMgrError e) {
+			throw new TurtleParseException(e.getMessage());
+		}
+		return new StatementIndex(builder);
+	}
+
+	public static StatementIndex readTurtle(String rdfContent) {
+		return readTurtle(new StringReader(rdfContent));
+	}
+
+	/**
+	 * Sorts the statements by the given term with a counting sort, which
+	 * keeps the statements of each term in the order they were added.
+	 */
+	private int[] groupStatements(int[] termIds, int[] offsets, boolean excludeSubject) {
+		int statementCount = 0;
+		for (int statement = 0; statement < termIds.length; statement++) {
+			if (isGrouped(statement, termIds, excludeSubject)) {
+				offsets[termIds[statement] + 1]++;
+				statementCount++;
+			}
+		}
+		for (int node = 0; node < nodes.length; node++) {
+			offsets[node + 1] += offsets[node];
+		}
+
+		int[] next = Arrays.copyOf(offsets, nodes.length);
+		int[] statements = new int[statementCount];
+		for (int statement = 0; statement < termIds.length; statement++) {
+			if (isGrouped(statement, termIds, excludeSubject)) {
+				statements[next[termIds[statement]]++] = statement;
+			}
+		}
+		return statements;
+	}
+
+	private boolean isGrouped(int statement, int[] termIds, boolean excludeSubject) {
+		if (!excludeSubject) return true;
+		return nodes[termIds[statement]].isResource() && termIds[statement] != subjectIds[statement];
+	}
+
+	private int getNodeId(RDFNode node) {
+		Integer id = nodeIds.get(node.asNode());
+		return id == null ? NONE : id;
+	}
+
+	private Statement getStatement(int statement) {
+		return model.createStatement(
+				nodes[subjectIds[statement]].asResource(),
+				predicates[predicateIds[statement]],
+				nodes[objectIds[statement]]);
+	}
+
+	private List<Statement> getStatements(final int[] statements, final int from, final int to) {
+		if (from == to) return Collections.emptyList();
+		return new AbstractList<Statement>() {
+			public Statement get(int index) {
+				return getStatement(statements[from + index]);
+			}
+
+			public int size() {
+				return to - from;
+			}
+		};
+	}
+
+	public Model getModel() {
+		return model;
+	}
+
+	public boolean isEmpty() {
+		return subjectIds.length == 0;
+	}
+
+	public Iterator<Statement> listStatements() {
+		return new Iterator<Statement>() {
+			private int statement = 0;
+
+			public boolean hasNext() {
+				return statement < subjectIds.length;
+			}
+
+			public Statement next() {
+				return getStatement(statement++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	public List<Statement> getStatementsWithSubject(Resource subject) {
+		int id = getNodeId(subject);
+		if (id == NONE) return Collections.emptyList();
+		return getStatements(statementsBySubject, subjectOffsets[id], subjectOffsets[id + 1]);
+	}
+
+	public List<Statement> getInverseStatements(Resource object) {
+		int id = getNodeId(object);
+		if (id == NONE) return Collections.emptyList();
+		return getStatements(inverseStatementsByObject, objectOffsets[id], objectOffsets[id + 1]);
+	}
+
+	public List<RDFNode> getTypes(Resource subject) {
+		int id = getNodeId(subject);
+		if (id == NONE || typePredicate == NONE) return Collections.emptyList();
+
+		List<RDFNode> types = Lists.newArrayListWithCapacity(1);
+		for (int i = subjectOffsets[id]; i < subjectOffsets[id + 1]; i++) {
+			int statement = statementsBySubject[i];
+			if (predicateIds[statement] == typePredicate) types.add(nodes[objectIds[statement]]);
+		}
+		return types;
+	}
+
+	/**
+	 * Assigns ids to the terms of statements as they are added.
+	 */
+	static class Builder {
+		private final Model model;
+		private final Terms terms;
+		private final Map<Node, Integer> nodeIds = Maps.newHashMap();
+		private final List<RDFNode> nodes = Lists.newArrayList();
+		private final Map<String, Integer> predicateIds = Maps.newHashMap();
+		private final List<Property> predicates = Lists.newArrayList();
+		private final IntList subjectIds = new IntList();
+		private final IntList predicateIdsOfStatements = new IntList();
+		private final IntList objectIds = new IntList();
+
+		private StatementSet parsedStatements;
+
+		/**
+		 * @param terms the terms shared with the indexes of other graphs, or null
+		 */
+		Builder(Model model, Terms terms) {
+			this.model = model;
+			this.terms = terms;
+		}
+
+		/**
+		 * Adds a parsed triple, unless it has been added already, as a
+		 * model holds a set of statements. Statements are told apart by
+		 * the ids of their terms, so no triple is kept once it is added.
+		 */
+		void add(Triple triple) {
+			int subject = getNodeId(triple.getSubject(), null);
+			int predicate = getPredicateId(triple.getPredicate(), null);
+			int object = getNodeId(triple.getObject(), null);
+			if (parsedStatements == null) parsedStatements = new StatementSet();
+			if (parsedStatements.add(subject, predicate, object)) add(subject, predicate, object);
+		}
+
+		private void add(Statement statement) {
+			add(getNodeId(statement.getSubject().asNode(), statement.getSubject()),
+					getPredicateId(statement.getPredicate().asNode(), statement.getPredicate()),
+					getNodeId(statement.getObject().asNode(), statement.getObject()));
+		}
+
+		private void add(int subject, int predicate, int object) {
+			subjectIds.add(subject);
+			predicateIdsOfStatements.add(predicate);
+			objectIds.add(object);
+		}
+
+		/**
+		 * @param rdfNode the node in a model, or null to create it in this builder's model
+		 */
+		private int getNodeId(Node node, RDFNode rdfNode) {
+			Integer id = nodeIds.get(node);
+			if (id == null) {
+				id = nodes.size();
+				nodeIds.put(node, id);
+				if (rdfNode == null) rdfNode = model.asRDFNode(node);
+				nodes.add(terms == null ? rdfNode : terms.intern(rdfNode));
+			}
+			return id;
+		}
+
+		private int getPredicateId(Node node, Property predicate) {
+			Integer id = predicateIds.get(node.getURI());
+			if (id == null) {
+				id = predicates.size();
+				predicateIds.put(node.getURI(), id);
+				if (predicate == null) predicate = model.createProperty(node.getURI());
+				predicates.add(terms == null ? predicate : terms.intern(predicate));
+			}
+			return id;
+		}
+
+		/**
+		 * The statements added, as an open addressing hash table of their
+		 * positions in the lists of term ids, so each statement costs one
+		 * int or two rather than an object.
+		 */
+		private class StatementSet {
+			private int[] table = newTable(64);
+			private int size;
+
+			/**
+			 * Records the statement as the next to be added to the lists of
+			 * term ids, unless it is there already
+			 */
+			private boolean add(int subject, int predicate, int object) {
+				if ((size + 1) * 2 > table.length) rehash();
+				int slot = findSlot(table, subject, predicate, object);
+				if (table[slot] != NONE) return false;
+				table[slot] = subjectIds.size;
+				size++;
+				return true;
+			}
+
+			private int findSlot(int[] table, int subject, int predicate, int object) {
+				int mask = table.length - 1;
+				int slot = hash(subject, predicate, object) & mask;
+				while (table[slot] != NONE) {
+					int statement = table[slot];
+					if (subjectIds.values[statement] == subject && predicateIdsOfStatements.values[statement] == predicate
+							&& objectIds.values[statement] == object) break;
+					slot = (slot + 1) & mask;
+				}
+				return slot;
+			}
+
+			private void rehash() {
+				int[] newTable = newTable(table.length * 2);
+				for (int statement : table) {
+					if (statement != NONE) {
+						newTable[findSlot(newTable, subjectIds.values[statement], predicateIdsOfStatements.values[statement],
+								objectIds.values[statement])] = statement;
+					}
+				}
+				table = newTable;
+			}
+
+			private int[] newTable(int size) {
+				int[] table = new int[size];
+				Arrays.fill(table, NONE);
+				return table;
+			}
+
+			private int hash(int subject, int predicate, int object) {
+				int hash = (subject * 31 + predicate) * 31 + object;
+				return hash ^ (hash >>> 16);
+			}
+		}
+
+		StatementIndex build() {
+			return new StatementIndex(this);
+		}
+	}
+
+	/**
+	 * The terms of the indexes of many graphs, such as the graphs of a
+	 * dataset, so that a term used by many graphs is held only once.
+	 */
+	static class Terms {
+		private final Map<Node, RDFNode> nodes = Maps.newHashMap();
+		private final Map<Node, Property> predicates = Maps.newHashMap();
+
+		private RDFNode intern(RDFNode node) {
+			RDFNode existingNode = nodes.get(node.asNode());
+			if (existingNode != null) return existingNode;
+			nodes.put(node.asNode(), node);
+			return node;
+		}
+
+		private Property intern(Property predicate) {
+			Property existingPredicate = predicates.get(predicate.asNode());
+			if (existingPredicate != null) return existingPredicate;
+			predicates.put(predicate.asNode(), predicate);
+			return predicate;
+		}
+	}
+
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Adds each triple to the index as it is parsed.
+	 */
+	private static class TurtleIndexer implements TurtleEventHandler {
+
+		private final Builder builder;
+
+		private TurtleIndexer(Builder builder) {
+			this.builder = builder;
+		}
+
+		public void triple(int line, int col, Triple triple) {
+			builder.add(triple);
+		}
+
+		public void prefix(int line, int col, String prefix, String iri) {
+			builder.model.setNsPrefix(prefix, iri);
+		}
+
+		public void startFormula(int line, int col) {
+			throw new TurtleParseException("[" + line + ", " + col + "] : Error: Formula found");
+		}
+
+		public void endFormula(int line, int col) {
+			throw new TurtleParseException("[" + line + ", " + col + "] : Error: Formula found");
+		}
+	}
+
+}
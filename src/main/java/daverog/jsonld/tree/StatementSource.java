@@ -0,0 +1,46 @@
+package daverog.jsonld.tree;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * The statements that the generator needs in order to expand
+ * a single resource node of a tree.
+ */
+interface StatementSource {
+
+	/**
+	 * The model that the nodes of the statements belong to, whose
+	 * prefix mappings are used to name them
+	 */
+	Model getModel();
+
+	boolean isEmpty();
+
+	/**
+	 * Every statement, in a stable order
+	 */
+	Iterator<Statement> listStatements();
+
+	/**
+	 * All statements in which the resource is the subject
+	 */
+	List<Statement> getStatementsWithSubject(Resource subject);
+
+	/**
+	 * All statements in which the resource is the object,
+	 * excluding those in which it is also the subject
+	 */
+	List<Statement> getInverseStatements(Resource object);
+
+	/**
+	 * All objects of rdf:type statements for the resource
+	 */
+	List<RDFNode> getTypes(Resource subject);
+
+}
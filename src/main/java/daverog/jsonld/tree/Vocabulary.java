@@ -0,0 +1,151 @@
+package daverog.jsonld.tree;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * The settings a {@link NameResolver} resolves names with, and a table of the
+ * terms it has seen: the namespace, local name and prefix of each URI.
+ *
+ * A vocabulary held by a {@link VocabularyCache} is shared by every resolver
+ * with the same settings, and its term table is safe for concurrent use.
+ */
+class Vocabulary {
+
+	private final Key key;
+	private final Map<String, Term> terms;
+
+	Vocabulary(Key key, Map<String, Term> terms) {
+		this.key = key;
+		this.terms = terms;
+	}
+
+	Term getTerm(Resource resource) {
+		Term term = terms.get(resource.getURI());
+		if (term == null) {
+			String nameSpace = resource.getNameSpace();
+			term = new Term(nameSpace, resource.getLocalName(), nameSpace == null ? null : key.namespacePrefixes.get(nameSpace));
+			terms.put(resource.getURI(), term);
+		}
+		return term;
+	}
+
+	String getPrefix(String nameSpace) {
+		return key.namespacePrefixes.get(nameSpace);
+	}
+
+	List<String> getPrioritisedNamespaces() {
+		return key.prioritisedNamespaces;
+	}
+
+	Map<String, String> getNameOverrides() {
+		return key.nameOverrides;
+	}
+
+	String getRdfResultOntologyPrefix() {
+		return key.rdfResultOntologyPrefix;
+	}
+
+	Key getKey() {
+		return key;
+	}
+
+	int getTermCount() {
+		return terms.size();
+	}
+
+	/**
+	 * The namespace, local name and prefix (if any) of a URI.
+	 */
+	static class Term {
+		private final String nameSpace;
+		private final String localName;
+		private final String prefix;
+
+		private Term(String nameSpace, String localName, String prefix) {
+			this.nameSpace = nameSpace;
+			this.localName = localName;
+			this.prefix = prefix;
+		}
+
+		String getNameSpace() {
+			return nameSpace;
+		}
+
+		String getLocalName() {
+			return localName;
+		}
+
+		String getPrefix() {
+			return prefix;
+		}
+	}
+
+	/**
+	 * Everything that affects the names resolved for a model: the prefix
+	 * of each of its namespaces, the prioritised namespaces, the name
+	 * overrides and the RDF Result ontology prefix.
+	 */
+	static class Key {
+		private final Map<String, String> namespacePrefixes;
+		private final List<String> prioritisedNamespaces;
+		private final Map<String, String> nameOverrides;
+		private final String rdfResultOntologyPrefix;
+
+		Key(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, String rdfResultOntologyPrefix) {
+			checkDuplicateNameOverrides(nameOverrides);
+
+			// The model is asked for the prefix of each namespace, so
+			// that a namespace with more than one prefix resolves as it would
+			// if the model were asked directly.
+			Map<String, String> namespacePrefixes = Maps.newHashMap();
+			for (String nameSpace : model.getNsPrefixMap().values()) {
+				namespacePrefixes.put(nameSpace, model.getNsURIPrefix(nameSpace));
+			}
+			this.namespacePrefixes = ImmutableMap.copyOf(namespacePrefixes);
+			this.prioritisedNamespaces = ImmutableList.<String>builder()
+					.add(RdfTree.RDF_PREFIX, RdfTree.OWL_PREFIX)
+					.addAll(prioritisedNamespaces)
+					.build();
+			this.nameOverrides = ImmutableMap.copyOf(nameOverrides);
+			this.rdfResultOntologyPrefix = rdfResultOntologyPrefix;
+		}
+
+		private static void checkDuplicateNameOverrides(Map<String, String> nameOverrides) {
+			Map<String, Collection<String>> inverse = Multimaps.invertFrom(Multimaps.forMap(nameOverrides), HashMultimap.<String, String>create()).asMap();
+			for (Collection collection : inverse.values()) {
+				if (collection.size() > 1)
+					throw new IllegalArgumentException("A name override cannot map to multiple URIs: " + collection);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(namespacePrefixes, prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return namespacePrefixes.equals(other.namespacePrefixes)
+					&& prioritisedNamespaces.equals(other.prioritisedNamespaces)
+					&& nameOverrides.equals(other.nameOverrides)
+					&& Objects.equal(rdfResultOntologyPrefix, other.rdfResultOntologyPrefix);
+		}
+	}
+
+}
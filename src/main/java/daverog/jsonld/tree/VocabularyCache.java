@@ -0,0 +1,69 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * A thread-safe cache of vocabularies, shared by the name resolvers of many
+ * requests. Resolvers for models with the same prefix mappings, prioritised
+ * namespaces, name overrides and RDF Result ontology prefix share one table
+ * of terms, so the namespace, local name and prefix of a URI are worked out
+ * only the first time any of them sees it.
+ *
+ * Names are resolved exactly as they are by a resolver without a cache.
+ */
+public class VocabularyCache {
+
+	public static final long DEFAULT_MAXIMUM_VOCABULARIES = 100;
+	public static final long DEFAULT_MAXIMUM_TERMS_PER_VOCABULARY = 100000;
+
+	private final long maximumTermsPerVocabulary;
+	private final Cache<Vocabulary.Key, Vocabulary> vocabularies;
+
+	public VocabularyCache() {
+		this(DEFAULT_MAXIMUM_VOCABULARIES, DEFAULT_MAXIMUM_TERMS_PER_VOCABULARY);
+	}
+
+	public VocabularyCache(long maximumVocabularies, long maximumTermsPerVocabulary) {
+		this.maximumTermsPerVocabulary = maximumTermsPerVocabulary;
+		vocabularies = CacheBuilder.newBuilder().maximumSize(maximumVocabularies).build();
+	}
+
+	public NameResolver createNameResolver(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, String rdfResultOntologyPrefix) {
+		return createNameResolver(model, prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix, false);
+	}
+
+	public NameResolver createNameResolver(Model model, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, String rdfResultOntologyPrefix, boolean lazy) {
+		return createNameResolver(new ModelStatementSource(model), prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix, lazy);
+	}
+
+	NameResolver createNameResolver(StatementSource statementSource, List<String> prioritisedNamespaces, Map<String, String> nameOverrides, String rdfResultOntologyPrefix, boolean lazy) {
+		Vocabulary.Key key = new Vocabulary.Key(statementSource.getModel(), prioritisedNamespaces, nameOverrides, rdfResultOntologyPrefix);
+		return new NameResolver(statementSource, getVocabulary(key), lazy);
+	}
+
+	Vocabulary getVocabulary(final Vocabulary.Key key) {
+		try {
+			return vocabularies.get(key, new Callable<Vocabulary>() {
+				public Vocabulary call() {
+					Cache<String, Vocabulary.Term> terms = CacheBuilder.newBuilder().maximumSize(maximumTermsPerVocabulary).build();
+					return new Vocabulary(key, terms.asMap());
+				}
+			});
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	public long size() {
+		return vocabularies.size();
+	}
+
+}
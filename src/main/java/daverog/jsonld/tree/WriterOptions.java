@@ -0,0 +1,67 @@
+package daverog.jsonld.tree;
+
+/**
+ * How a tree is laid out when it is written as JSON, XML or HTML. Options are
+ * immutable, and are created with a {@link Builder}.
+ *
+ * The default options pretty-print with two spaces of indentation, as trees
+ * have always been written. Compact options write no whitespace between
+ * elements at all.
+ */
+public class WriterOptions {
+
+	public static final String DEFAULT_INDENT = "  ";
+
+	public static final WriterOptions DEFAULT = builder().build();
+	public static final WriterOptions COMPACT = builder().compact().build();
+
+	private final String indent;
+
+	private WriterOptions(Builder builder) {
+		this.indent = builder.indent;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * The indentation of each level of nesting, or the empty string if the
+	 * output is compact.
+	 */
+	public String getIndent() {
+		return indent;
+	}
+
+	public boolean isCompact() {
+		return indent.isEmpty();
+	}
+
+	public static class Builder {
+		private String indent = DEFAULT_INDENT;
+
+		private Builder() {
+		}
+
+		/**
+		 * Pretty-prints using the given indentation, which must be made of
+		 * spaces and tabs. An empty indentation is the same as {@link #compact()}.
+		 */
+		public Builder indent(String indent) {
+			if (indent == null || !indent.matches("[ \t]*"))
+				throw new IllegalArgumentException("An indent can only contain spaces and tabs: '" + indent + "'");
+			this.indent = indent;
+			return this;
+		}
+
+		public Builder compact() {
+			this.indent = "";
+			return this;
+		}
+
+		public WriterOptions build() {
+			return new WriterOptions(this);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package daverog.jsonld.tree;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.StringTokenizer;
+
+/**
+ * Writes elements straight to a writer as they are started and ended, laid
+ * out and escaped exactly as dom4j's XMLWriter lays out and escapes the
+ * documents this library used to build: elements that contain elements are
+ * indented (unless the output is compact), text is trimmed with its runs of
+ * whitespace collapsed to single spaces, and empty elements are closed with "/>".
+ *
+ * Elements may contain either elements or text, but not both.
+ */
+class XmlStreamWriter {
+
+	private final Writer output;
+	private final String indent;
+	private final boolean compact;
+	private final Deque<OpenElement> openElements = new ArrayDeque<OpenElement>();
+	private boolean startTagOpen;
+
+	XmlStreamWriter(Writer output, WriterOptions options) {
+		this.output = output;
+		this.indent = options.getIndent();
+		this.compact = options.isCompact();
+	}
+
+	void startElement(String name) throws IOException {
+		OpenElement parent = openElements.peek();
+		if (parent != null) {
+			closeStartTag();
+			parent.hasElements = true;
+			writeNewLine(openElements.size());
+		}
+		output.write('<');
+		output.write(name);
+		openElements.push(new OpenElement(name));
+		startTagOpen = true;
+	}
+
+	/**
+	 * Adds an attribute to the element just started. A null value adds nothing.
+	 */
+	void attribute(String name, String value) throws IOException {
+		if (value == null) return;
+		output.write(' ');
+		output.write(name);
+		output.write("=\"");
+		output.write(escapeAttribute(value));
+		output.write('"');
+	}
+
+	void text(String text) throws IOException {
+		closeStartTag();
+		output.write(trim(escapeText(text)));
+	}
+
+	void endElement() throws IOException {
+		OpenElement element = openElements.pop();
+		if (startTagOpen) {
+			output.write("/>");
+			startTagOpen = false;
+			return;
+		}
+		if (element.hasElements) {
+			writeNewLine(openElements.size());
+		}
+		output.write("</");
+		output.write(element.name);
+		output.write('>');
+	}
+
+	void flush() throws IOException {
+		output.flush();
+	}
+
+	private void closeStartTag() throws IOException {
+		if (startTagOpen) {
+			output.write('>');
+			startTagOpen = false;
+		}
+	}
+
+	private void writeNewLine(int depth) throws IOException {
+		if (compact) return;
+		output.write('\n');
+		for (int i = 0; i < depth; i++) {
+			output.write(indent);
+		}
+	}
+
+	private static String trim(String text) {
+		StringBuilder trimmed = new StringBuilder(text.length());
+		StringTokenizer tokens = new StringTokenizer(text);
+		while (tokens.hasMoreTokens()) {
+			if (trimmed.length() > 0) trimmed.append(' ');
+			trimmed.append(tokens.nextToken());
+		}
+		return trimmed.toString();
+	}
+
+	static String escapeText(String text) {
+		return escape(text, false);
+	}
+
+	static String escapeAttribute(String text) {
+		return escape(text, true);
+	}
+
+	private static String escape(String text, boolean attribute) {
+		StringBuilder escaped = null;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			String entity = null;
+			switch (c) {
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '&': entity = "&amp;"; break;
+				case '"': if (attribute) entity = "&quot;"; break;
+				case '\t': case '\n': case '\r': break;
+				default: if (c < 32) entity = "&#" + (int) c + ";";
+			}
+			if (entity != null) {
+				if (escaped == null) escaped = new StringBuilder(text.length() + 16).append(text, 0, i);
+				escaped.append(entity);
+			} else if (escaped != null) {
+				escaped.append(c);
+			}
+		}
+		return escaped == null ? text : escaped.toString();
+	}
+
+	private static class OpenElement {
+		private final String name;
+		private boolean hasElements;
+
+		private OpenElement(String name) {
+			this.name = name;
+		}
+	}
+
+}
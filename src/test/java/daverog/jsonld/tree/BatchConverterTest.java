@@ -0,0 +1,148 @@
+package daverog.jsonld.tree;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchConverterTest {
+
+	@Test
+	public void results_are_in_the_order_of_the_models() throws RdfTreeException {
+		List<Model> models = Lists.newArrayList();
+		List<String> expected = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			for (String fixture : TestResourceLoader.FIXTURES) {
+				models.add(TestResourceLoader.loadFixture(fixture));
+				expected.add(TestResourceLoader.loadFixtureJson(fixture));
+			}
+		}
+
+		List<BatchConverter.Result> results = BatchConverter.builder().parallelism(4).queueDepth(6).build().convert(models);
+
+		assertEquals(expected.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).getIndex());
+			assertTrue(results.get(i).isSuccessful());
+			assertEquals(expected.get(i), results.get(i).getOutput());
+		}
+	}
+
+	@Test
+	public void a_model_that_cannot_be_converted_does_not_stop_the_batch() throws RdfTreeException {
+		List<BatchConverter.Result> results = BatchConverter.builder().parallelism(2).build().convert(Lists.newArrayList(
+				TestResourceLoader.loadFixture("ben-ainslie"),
+				ModelUtils.createJenaModel("<uri:a> <uri:b> <uri:c> ."),
+				TestResourceLoader.loadFixture("creativework")));
+
+		assertTrue(results.get(0).isSuccessful());
+		assertFalse(results.get(1).isSuccessful());
+		assertNull(results.get(1).getOutput());
+		assertTrue(results.get(1).getFailure() instanceof RdfTreeException);
+		assertEquals(TestResourceLoader.loadFixtureJson("creativework"), results.get(2).getOutput());
+	}
+
+	@Test
+	public void no_more_models_than_the_queue_depth_are_taken_before_their_results_are_handled() throws RdfTreeException {
+		final AtomicInteger taken = new AtomicInteger();
+		final AtomicInteger handled = new AtomicInteger();
+		final AtomicInteger mostPending = new AtomicInteger();
+		Iterable<Model> models = new Iterable<Model>() {
+			public Iterator<Model> iterator() {
+				return new Iterator<Model>() {
+					public boolean hasNext() {
+						return taken.get() < 50;
+					}
+
+					public Model next() {
+						taken.incrementAndGet();
+						mostPending.set(Math.max(mostPending.get(), taken.get() - handled.get()));
+						return TestResourceLoader.loadFixture("creativework");
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+
+		BatchConverter.builder().parallelism(3).queueDepth(5).build().convert(models, new BatchConverter.ResultHandler() {
+			public void handle(BatchConverter.Result result) {
+				assertEquals(handled.getAndIncrement(), result.getIndex());
+			}
+		});
+
+		assertEquals(50, handled.get());
+		assertEquals(5, mostPending.get());
+	}
+
+	@Test
+	public void a_batch_can_be_written_as_xml_and_html() throws RdfTreeException {
+		List<BatchConverter.Result> xml = BatchConverter.builder().xml().build().convert(Lists.newArrayList(TestResourceLoader.loadFixture("creativework")));
+		List<BatchConverter.Result> html = BatchConverter.builder().html("/things?uri=").build().convert(Lists.newArrayList(TestResourceLoader.loadFixture("creativework")));
+
+		assertEquals(new RdfTreeGenerator().generateRdfTree(TestResourceLoader.loadFixture("creativework")).asXml(), xml.get(0).getOutput());
+		assertEquals(TestResourceLoader.loadClasspathResourceAsString("fixtures/creativework.html"), html.get(0).getOutput());
+	}
+
+	@Test
+	public void a_model_that_cannot_be_taken_from_the_batch_does_not_stop_the_batch() throws RdfTreeException {
+		final Iterator<Model> fixtures = Lists.newArrayList(
+				TestResourceLoader.loadFixture("ben-ainslie"), null, TestResourceLoader.loadFixture("creativework")).iterator();
+		Iterable<Model> models = new Iterable<Model>() {
+			public Iterator<Model> iterator() {
+				return new Iterator<Model>() {
+					public boolean hasNext() {
+						return fixtures.hasNext();
+					}
+
+					public Model next() {
+						Model model = fixtures.next();
+						if (model == null) throw new IllegalStateException("The model could not be read");
+						return model;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+
+		List<BatchConverter.Result> results = BatchConverter.builder().parallelism(2).build().convert(models);
+
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isSuccessful());
+		assertEquals(1, results.get(1).getIndex());
+		assertTrue(results.get(1).getFailure() instanceof IllegalStateException);
+		assertEquals(TestResourceLoader.loadFixtureJson("creativework"), results.get(2).getOutput());
+	}
+
+	@Test
+	public void each_batch_has_a_vocabulary_cache_unless_one_is_given() throws RdfTreeException {
+		VocabularyCache vocabularyCache = new VocabularyCache();
+		BatchConverter converter = BatchConverter.builder()
+				.generatorOptions(RdfTreeGeneratorOptions.builder().vocabularyCache(vocabularyCache).build())
+				.build();
+
+		converter.convert(Lists.newArrayList(TestResourceLoader.loadFixture("creativework")));
+		assertTrue(vocabularyCache == converter.getGeneratorOptions().getVocabularyCache());
+		assertTrue(vocabularyCache.size() > 0);
+		assertEquals(null, BatchConverter.builder().build().getGeneratorOptions().getVocabularyCache());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void the_queue_depth_must_be_positive() {
+		BatchConverter.builder().queueDepth(0);
+	}
+
+}
@@ -0,0 +1,164 @@
+package daverog.jsonld.tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.query.DataSource;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatasetIndexTest {
+
+	private String toNQuads(Model model, String graph) {
+		StringWriter nTriples = new StringWriter();
+		model.write(nTriples, "N-TRIPLE");
+		StringBuilder nQuads = new StringBuilder();
+		for (String line : nTriples.toString().split("\n")) {
+			if (line.trim().isEmpty()) continue;
+			nQuads.append(line.substring(0, line.lastIndexOf('.'))).append("<").append(graph).append("> .\n");
+		}
+		return nQuads.toString();
+	}
+
+	private DatasetIndex readNQuads(String nQuads, PrefixMapping prefixes) {
+		return DatasetIndex.readNQuads(new ByteArrayInputStream(nQuads.getBytes(Charsets.UTF_8)), prefixes);
+	}
+
+	@Test
+	public void a_tree_is_generated_from_each_named_graph_of_a_dataset() throws RdfTreeException {
+		DataSource dataset = DatasetFactory.create();
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			dataset.addNamedModel("http://example.com/graph/" + fixture, TestResourceLoader.loadFixture(fixture));
+		}
+
+		Map<String, RdfTree> trees = new RdfTreeGenerator().generateRdfTrees(dataset);
+
+		assertEquals(TestResourceLoader.FIXTURES.size(), trees.size());
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			assertEquals(TestResourceLoader.loadFixtureJson(fixture), trees.get("http://example.com/graph/" + fixture).asJson());
+		}
+	}
+
+	@Test
+	public void a_tree_is_generated_from_each_graph_of_n_quads() throws RdfTreeException {
+		StringBuilder nQuads = new StringBuilder();
+		PrefixMapping prefixes = PrefixMapping.Factory.create();
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			nQuads.append(toNQuads(TestResourceLoader.loadFixture(fixture), "http://example.com/graph/" + fixture));
+			prefixes.setNsPrefixes(TestResourceLoader.loadFixture(fixture));
+		}
+
+		DatasetIndex index = readNQuads(nQuads.toString(), prefixes);
+		Map<String, RdfTree> trees = new RdfTreeGenerator().generateRdfTrees(index);
+
+		assertEquals(TestResourceLoader.FIXTURES.size(), index.size());
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			Model model = ModelFactory.createDefaultModel().add(TestResourceLoader.loadFixture(fixture));
+			model.setNsPrefixes(prefixes);
+			assertEquals(new RdfTreeGenerator().generateRdfTree(model).asJson(),
+					trees.get("http://example.com/graph/" + fixture).asJson());
+		}
+	}
+
+	@Test
+	public void the_result_statements_of_each_graph_apply_only_to_its_own_tree() throws RdfTreeException {
+		String nQuads =
+				"<http://purl.org/ontology/rdf-result/this> <http://purl.org/ontology/rdf-result/next> <uri:a> <uri:graph1> .\n" +
+				"<http://purl.org/ontology/rdf-result/meta> <http://purl.org/ontology/rdf-result/totalResults> \"10\"^^<http://www.w3.org/2001/XMLSchema#int> <uri:graph1> .\n" +
+				"<uri:a> <uri:p> \"A\" <uri:graph1> .\n" +
+				"<http://purl.org/ontology/rdf-result/this> <http://purl.org/ontology/rdf-result/item> <uri:b> <uri:graph2> .\n" +
+				"<uri:b> <uri:p> \"B\" <uri:graph2> .\n" +
+				"<uri:b> <uri:q> <uri:a> <uri:graph2> .\n";
+
+		Map<String, RdfTree> trees = new RdfTreeGenerator().generateRdfTrees(readNQuads(nQuads, PrefixMapping.Factory.create()));
+
+		RdfTree list = trees.get("uri:graph1");
+		assertTrue(list.isList());
+		assertEquals(Integer.valueOf(10), list.getTotalResults());
+		assertEquals(1, list.getChildren().size());
+		assertEquals(1, list.getChildren().get(0).getChildren().size());
+
+		RdfTree item = trees.get("uri:graph2");
+		assertEquals("uri:b", item.getNode().asResource().getURI());
+		assertEquals(null, item.getTotalResults());
+		assertEquals(2, item.getChildren().size());
+	}
+
+	@Test
+	public void trees_generated_concurrently_are_the_same_as_those_generated_one_at_a_time() throws RdfTreeException {
+		DataSource dataset = DatasetFactory.create();
+		for (int i = 0; i < 20; i++) {
+			dataset.addNamedModel("http://example.com/graph/" + i, new ResultGraphFactory().items(10).seed(i).createModel());
+		}
+		DatasetIndex index = new DatasetIndex(dataset);
+		Map<String, RdfTree> expected = new RdfTreeGenerator().generateRdfTrees(index);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			Map<String, RdfTree> trees = new RdfTreeGenerator(executorService).generateRdfTrees(index);
+			assertEquals(Lists.newArrayList(expected.keySet()), Lists.newArrayList(trees.keySet()));
+			for (String name : expected.keySet()) {
+				assertEquals(expected.get(name).asJson(), trees.get(name).asJson());
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void when_one_graph_fails_the_trees_of_the_others_are_not_left_generating() {
+		StringBuilder nQuads = new StringBuilder("<uri:a> <uri:p> \"A\" <uri:graph1> .\n");
+		for (int i = 0; i < 20; i++) {
+			nQuads.append(toNQuads(new ResultGraphFactory().items(10).seed(i).createModel(), "http://example.com/graph/" + i));
+		}
+		final List<Future<?>> futures = Lists.newArrayList();
+		ExecutorService executorService = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+			public <T> Future<T> submit(Callable<T> task) {
+				Future<T> future = super.submit(task);
+				futures.add(future);
+				return future;
+			}
+		};
+		try {
+			new RdfTreeGenerator(executorService).generateRdfTrees(readNQuads(nQuads.toString(), PrefixMapping.Factory.create()));
+			throw new AssertionError("No exception was thrown");
+		} catch (RdfTreeException e) {
+			assertEquals(21, futures.size());
+			for (Future<?> future : futures) {
+				assertTrue(future.isDone());
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void a_graph_without_result_statements_is_reported_by_name() {
+		String nQuads = "<uri:a> <uri:p> \"A\" <uri:graph1> .\n";
+		try {
+			new RdfTreeGenerator().generateRdfTrees(readNQuads(nQuads, PrefixMapping.Factory.create()));
+		} catch (RdfTreeException e) {
+			assertTrue(e.getMessage().startsWith("The tree of graph uri:graph1 could not be generated"));
+			return;
+		}
+		throw new AssertionError("No exception was thrown");
+	}
+
+}
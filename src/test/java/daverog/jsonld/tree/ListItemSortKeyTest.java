@@ -0,0 +1,78 @@
+package daverog.jsonld.tree;
+
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListItemSortKeyTest {
+
+	private final Model model = ModelUtils.createJenaModel(
+			"@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n" +
+			"<uri:a> <uri:p> \"a\" , \"a\"@en , \"b\" , 1 , \"01\"^^xsd:int , <uri:x> .\n" +
+			"<uri:b> <uri:p> \"a\"@en , \"c\" .\n" +
+			"<uri:c> <uri:p> 2 , <uri:y> .\n" +
+			"<uri:d> <uri:p> \"a\" .\n" +
+			"<uri:e> <uri:p> \"01\"^^xsd:int .\n" +
+			"<uri:f> <uri:p> 1 , <uri:x> .\n" +
+			"<uri:g> <uri:q> \"z\" .");
+
+	private static final Comparator<RDFNode> VALUE_COMPARATOR = new Comparator<RDFNode>() {
+		public int compare(RDFNode node1, RDFNode node2) {
+			if (node1.isLiteral() && !node2.isLiteral()) return -1;
+			if (!node1.isLiteral() && node2.isLiteral()) return 1;
+			if (node1.isLiteral() && node2.isLiteral()) {
+				Object value1 = node1.asLiteral().getValue();
+				Object value2 = node2.asLiteral().getValue();
+				if (value1 instanceof String && !(value2 instanceof String)) return -1;
+				if (!(value1 instanceof String) && value2 instanceof String) return 1;
+				return RdfTreeUtils.compareObjects(value1, value2);
+			}
+			return RdfTreeUtils.compareObjects(node1, node2);
+		}
+	};
+
+	@Test
+	public void sort_keys_compare_the_same_way_as_comparing_all_values_of_two_items() {
+		List<String> items = Lists.newArrayList("uri:a", "uri:b", "uri:c", "uri:d", "uri:e", "uri:f", "uri:g");
+		for (String first : items) {
+			for (String second : items) {
+				assertEquals(first + " compared to " + second,
+						compareValues(values(first), values(second)),
+						Integer.signum(ListItemSortKey.COMPARATOR.compare(sortKey(first), sortKey(second))));
+			}
+		}
+	}
+
+	@Test
+	public void an_item_without_values_sorts_lowest() {
+		assertEquals(-1, ListItemSortKey.COMPARATOR.compare(sortKey("uri:g"), sortKey("uri:a")));
+		assertEquals(1, ListItemSortKey.COMPARATOR.compare(sortKey("uri:a"), sortKey("uri:g")));
+	}
+
+	@Test
+	public void items_without_values_are_equal() {
+		assertEquals(0, ListItemSortKey.COMPARATOR.compare(sortKey("uri:g"), sortKey("uri:h")));
+		assertEquals(0, ListItemSortKey.COMPARATOR.compare(sortKey("uri:h"), sortKey("uri:g")));
+	}
+
+	private int compareValues(List<RDFNode> firstValues, List<RDFNode> secondValues) {
+		if (firstValues.isEmpty()) return secondValues.isEmpty() ? 0 : -1;
+		if (secondValues.isEmpty()) return 1;
+		return RdfTreeUtils.compareTwoListsOfValues(firstValues, secondValues, VALUE_COMPARATOR);
+	}
+
+	private ListItemSortKey sortKey(String uri) {
+		return new ListItemSortKey(model.getResource(uri), values(uri));
+	}
+
+	private List<RDFNode> values(String uri) {
+		return model.listObjectsOfProperty(model.getResource(uri), model.getProperty("uri:p")).toList();
+	}
+
+}
@@ -3,7 +3,10 @@ package daverog.jsonld.tree;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -13,6 +16,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class NameResolverTest {
 	
@@ -113,4 +117,46 @@ public class NameResolverTest {
         Map<String, String> overrides = ImmutableMap.of("http://purl.org/ns/a", "a", "http://purl.org/ns/b", "a", "http://purl.org/ns/c", "c");
         new NameResolver(model, prioritisedNamespaces, overrides, "");
     }
+
+    @Test
+    public void a_lazy_resolver_registers_only_the_terms_of_statements_added_to_it() {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix prfx: <http://prefix.com/> .\n" +
+                "<uri:a> prfx:reached <uri:b> .\n" +
+                "<uri:c> prfx:unreached <uri:d> .");
+        NameResolver nameResolver = new NameResolver(model, prioritisedNamespaces, nameOverrides, "", true);
+        assertTrue(nameResolver.getMappedResources().isEmpty());
+
+        nameResolver.registerStatement(model.listStatements(model.getResource("uri:a"), null, (RDFNode) null).next());
+
+        assertEquals(Sets.newHashSet("reached"), nameResolver.getMappedResources().keySet());
+        assertEquals("prfx:unreached", nameResolver.getPrefixedName(model.getResource("http://prefix.com/unreached")));
+    }
+
+    @Test
+    public void a_lazy_resolver_settles_name_collisions_by_priority() {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix prfx: <http://prefix.com/> .\n" +
+                "@prefix other: <http://other.com/> .\n" +
+                "<uri:a> other:name <uri:b> .\n" +
+                "<uri:a> prfx:name <uri:b> .");
+        NameResolver eager = new NameResolver(model, prioritisedNamespaces, nameOverrides, "");
+        NameResolver lazy = new NameResolver(model, prioritisedNamespaces, nameOverrides, "", true);
+        StmtIterator statements = model.listStatements();
+        while (statements.hasNext()) lazy.registerStatement(statements.next());
+
+        assertEquals(eager.getMappedResources().keySet(), lazy.getMappedResources().keySet());
+        assertEquals("name", lazy.getName(model.getResource("http://prefix.com/name")));
+        assertEquals("other_name", lazy.getName(model.getResource("http://other.com/name")));
+    }
+
+    @Test
+    public void an_eager_resolver_ignores_statements_added_to_it() {
+        Model model = ModelUtils.createJenaModel("<uri:a> <uri:b> <uri:c> .");
+        NameResolver nameResolver = new NameResolver(model, prioritisedNamespaces, nameOverrides, "");
+        nameResolver.registerStatement(ModelUtils.createJenaModel(
+                "@prefix prfx: <http://prefix.com/> .\n" +
+                "<uri:a> prfx:name <uri:c> .").listStatements().next());
+        assertTrue(nameResolver.getMappedResources().isEmpty());
+    }
 }
@@ -0,0 +1,130 @@
+package daverog.jsonld.tree;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCacheTest {
+
+	private final OutputCache cache = new OutputCache();
+	private final RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().outputCache(cache).build());
+
+	@Test
+	public void cached_output_is_the_same_as_generated_output() throws RdfTreeException {
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			for (int i = 0; i < 2; i++) {
+				assertEquals(TestResourceLoader.loadFixtureJson(fixture), generator.generateJson(TestResourceLoader.loadFixture(fixture)));
+			}
+		}
+		assertEquals(TestResourceLoader.loadClasspathResourceAsString("fixtures/creativework.html"),
+				generator.generateHtml(TestResourceLoader.loadFixture("creativework"), "/things?uri="));
+		assertEquals(4, cache.hitCount());
+		assertEquals(5, cache.missCount());
+	}
+
+	@Test
+	public void a_model_parsed_again_is_found_although_its_blank_nodes_are_labelled_differently() throws RdfTreeException {
+		String turtle =
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"result:this result:item <uri:a> .\n" +
+				"<uri:a> <uri:b> [ <uri:c> \"x\" ; <uri:d> [ <uri:c> \"y\" ] ] .";
+
+		String json = generator.generateJson(ModelUtils.createJenaModel(turtle));
+		assertEquals(json, generator.generateJson(ModelUtils.createJenaModel(turtle)));
+		assertEquals(1, cache.hitCount());
+	}
+
+	@Test
+	public void models_that_differ_only_in_where_a_blank_node_is_used_are_not_confused() {
+		Model model = ModelUtils.createJenaModel(
+				"<uri:a> <uri:b> [ <uri:c> \"x\" ] .\n" +
+				"<uri:a> <uri:d> [ <uri:c> \"y\" ] .");
+		Model swapped = ModelUtils.createJenaModel(
+				"<uri:a> <uri:b> [ <uri:c> \"y\" ] .\n" +
+				"<uri:a> <uri:d> [ <uri:c> \"x\" ] .");
+
+		assertFalse(GraphHash.hash(model).equals(GraphHash.hash(swapped)));
+	}
+
+	@Test
+	public void models_whose_blank_nodes_cannot_be_told_apart_are_not_cached() throws RdfTreeException {
+		String resultThis =
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"result:this result:item <uri:a> .\n";
+		Model ringOfSix = ModelUtils.createJenaModel(resultThis +
+				"<uri:a> <uri:p> _:b0, _:b3 .\n" +
+				"_:b0 <uri:next> _:b1 . _:b1 <uri:next> _:b2 . _:b2 <uri:next> _:b3 .\n" +
+				"_:b3 <uri:next> _:b4 . _:b4 <uri:next> _:b5 . _:b5 <uri:next> _:b0 .");
+		Model ringsOfThree = ModelUtils.createJenaModel(resultThis +
+				"<uri:a> <uri:p> _:c0, _:d0 .\n" +
+				"_:c0 <uri:next> _:c1 . _:c1 <uri:next> _:c2 . _:c2 <uri:next> _:c0 .\n" +
+				"_:d0 <uri:next> _:d1 . _:d1 <uri:next> _:d2 . _:d2 <uri:next> _:d0 .");
+
+		String ringOfSixJson = new RdfTreeGenerator().generateJson(ringOfSix);
+		String ringsOfThreeJson = new RdfTreeGenerator().generateJson(ringsOfThree);
+		assertFalse(ringOfSixJson.equals(ringsOfThreeJson));
+
+		assertEquals(null, GraphHash.hash(ringOfSix));
+		assertEquals(null, GraphHash.hash(ringsOfThree));
+		assertEquals(ringOfSixJson, generator.generateJson(ringOfSix));
+		assertEquals(ringsOfThreeJson, generator.generateJson(ringsOfThree));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void models_with_different_prefixes_are_not_confused() {
+		assertFalse(GraphHash.hash(ModelUtils.createJenaModel("@prefix p: <uri:> . <uri:a> <uri:b> <uri:c> ."))
+				.equals(GraphHash.hash(ModelUtils.createJenaModel("@prefix q: <uri:> . <uri:a> <uri:b> <uri:c> ."))));
+	}
+
+	@Test
+	public void output_is_cached_for_each_format_and_setting() throws RdfTreeException {
+		Model model = TestResourceLoader.loadFixture("ben-ainslie");
+		generator.generateJson(model);
+		generator.generateJson(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.COMPACT);
+		generator.generateJson(model, Lists.<String>newArrayList(), ImmutableMap.of("http://xmlns.com/foaf/0.1/name", "title"), WriterOptions.DEFAULT);
+		generator.generateXml(model);
+		generator.generateHtml(model, "/things?uri=");
+		generator.generateHtml(model, "/other?uri=");
+		new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().outputCache(cache).lazyNameResolution(true).build()).generateJson(model);
+		generator.generateJson(model, 0, 10);
+
+		assertEquals(0, cache.hitCount());
+		assertEquals(8, cache.size());
+	}
+
+	@Test
+	public void output_is_evicted_once_the_cache_is_full() throws RdfTreeException {
+		Model model = TestResourceLoader.loadFixture("ben-ainslie");
+		String json = new RdfTreeGenerator().generateJson(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.COMPACT);
+		OutputCache smallCache = new OutputCache(10 * 2 * json.length());
+		RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().outputCache(smallCache).build());
+
+		String indent = "";
+		for (int i = 0; i < 40; i++) {
+			generator.generateJson(model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), WriterOptions.builder().indent(indent).build());
+			indent += " ";
+		}
+
+		assertTrue(smallCache.size() < 10);
+		assertEquals(40, smallCache.missCount());
+	}
+
+	@Test(expected = RdfTreeException.class)
+	public void errors_are_not_cached() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel("<uri:a> <uri:b> <uri:c> .");
+		try {
+			generator.generateJson(model);
+		} catch (RdfTreeException e) {
+			assertEquals(0, cache.size());
+		}
+		generator.generateJson(model);
+	}
+
+}
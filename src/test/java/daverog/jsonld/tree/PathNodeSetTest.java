@@ -0,0 +1,54 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PathNodeSetTest {
+
+	private final Model model = ModelFactory.createDefaultModel();
+
+	@Test
+	public void every_node_added_is_found_and_no_other() {
+		List<PathNodeSet> sets = Lists.newArrayList(PathNodeSet.EMPTY);
+		for (int i = 0; i < 5000; i++) {
+			sets.add(sets.get(i).with(model.createResource("uri:n" + i)));
+		}
+
+		PathNodeSet all = sets.get(5000);
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(all.contains(model.createResource("uri:n" + i)));
+			assertFalse(all.contains(model.createResource("uri:m" + i)));
+		}
+		// adding to a set leaves it as it was
+		assertTrue(sets.get(100).contains(model.createResource("uri:n99")));
+		assertFalse(sets.get(100).contains(model.createResource("uri:n100")));
+	}
+
+	@Test
+	public void nodes_with_the_same_hash_are_told_apart() {
+		RDFNode first = model.createTypedLiteral("Aa");
+		RDFNode second = model.createTypedLiteral("BB");
+		RDFNode third = model.createResource("uri:c");
+		PathNodeSet set = PathNodeSet.EMPTY.with(first);
+
+		assertFalse(set.contains(second));
+		assertTrue(set.with(second).contains(second));
+		assertTrue(set.with(second).with(third).contains(first));
+	}
+
+	@Test
+	public void adding_a_node_that_is_there_already_gives_the_same_set() {
+		PathNodeSet set = PathNodeSet.EMPTY.with(model.createResource("uri:a"));
+		assertSame(set, set.with(model.createResource("uri:a")));
+	}
+
+}
@@ -1,5 +1,6 @@
 package daverog.jsonld.tree;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -57,4 +58,47 @@ public class RdfTreeGeneratorLoadTest {
     assertTrue("Took too long too perform TTL -> JSON-LD conversion", timeTakenInMs < 300 * 10);
     System.out.println("Time taken (ms): " + timeTakenInMs);
   }
+
+  @Test
+  public void load_test_for_proven_slow_conversion_using_a_statement_index() throws RdfTreeException {
+    Model model = ModelUtils.createJenaModel(
+        TestResourceLoader.loadClasspathResourceAsString("fixtures/creative-works-about-cardiff.ttl"));
+    StatementIndex index = new StatementIndex(model);
+
+    long before = System.currentTimeMillis();
+    for (int i=0; i < 50; i++) {
+      generator.generateRdfTree(index).asJson();
+    }
+    long timeTakenInMs = System.currentTimeMillis() - before;
+    assertTrue("Took too long too perform TTL -> JSON-LD conversion", timeTakenInMs < 300 * 10);
+    System.out.println("Time taken using index (ms): " + timeTakenInMs);
+  }
+
+  @Test
+  public void synthetic_graphs_of_every_shape_are_generated_as_trees() throws RdfTreeException {
+    for (ResultGraphFactory.Shape shape : ResultGraphFactory.Shape.values()) {
+      RdfTree tree = generator.generateRdfTree(new ResultGraphFactory()
+          .shape(shape).items(50).branching(3).depth(3).sharedFraction(0.2).inverseLinkDensity(0.1)
+          .createModel());
+      assertEquals(shape == ResultGraphFactory.Shape.ITEM ? 1 : 50, tree.isList() ? tree.getChildren().size() : 1);
+    }
+  }
+
+  @Test
+  public void conversion_time_is_reported_as_list_length_doubles() throws RdfTreeException {
+    for (int items = 100; items <= 800; items *= 2) {
+      Model model = new ResultGraphFactory()
+          .shape(ResultGraphFactory.Shape.LIST_WITH_ORDER_BY_PREDICATE).items(items).branching(2).depth(2)
+          .sharedFraction(0.1).inverseLinkDensity(0.05)
+          .createModel();
+
+      long before = System.currentTimeMillis();
+      RdfTree tree = generator.generateRdfTree(model);
+      tree.asJson();
+      long timeTakenInMs = System.currentTimeMillis() - before;
+
+      assertEquals(items, tree.getChildren().size());
+      System.out.println("Items: " + items + ", statements: " + model.size() + ", time taken (ms): " + timeTakenInMs);
+    }
+  }
 }
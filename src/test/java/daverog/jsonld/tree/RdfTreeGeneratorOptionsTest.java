@@ -0,0 +1,149 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RdfTreeGeneratorOptionsTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private ExecutorService executorService;
+
+	@Before
+	public void setUp() {
+		executorService = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void the_default_options_generate_sequentially_from_the_model() {
+		RdfTreeGeneratorOptions options = RdfTreeGeneratorOptions.DEFAULT;
+		assertEquals(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX, options.getResultOntologyPrefix());
+		assertNull(options.getExecutorService());
+		assertNull(options.getVocabularyCache());
+		assertFalse(options.isLazyNameResolution());
+		assertFalse(options.isIndexed());
+		assertEquals(RdfTreeGeneratorOptions.UNLIMITED, options.getMaximumNodes());
+	}
+
+	@Test
+	public void parallel_generation_uses_an_index_by_default() {
+		assertTrue(RdfTreeGeneratorOptions.builder().executorService(executorService).build().isIndexed());
+	}
+
+	@Test
+	public void options_can_be_copied_and_changed() {
+		RdfTreeGeneratorOptions options = RdfTreeGeneratorOptions.builder().maximumNodes(10).lazyNameResolution(true).build();
+		RdfTreeGeneratorOptions copy = options.toBuilder().indexStrategy(RdfTreeGeneratorOptions.IndexStrategy.INDEX).build();
+		assertEquals(10, copy.getMaximumNodes());
+		assertTrue(copy.isLazyNameResolution());
+		assertTrue(copy.isIndexed());
+		assertFalse(options.isIndexed());
+	}
+
+	@Test
+	public void parallel_generation_cannot_query_the_model() {
+		thrown.expect(IllegalArgumentException.class);
+		RdfTreeGeneratorOptions.builder()
+				.executorService(executorService)
+				.indexStrategy(RdfTreeGeneratorOptions.IndexStrategy.MODEL)
+				.build();
+	}
+
+	@Test
+	public void a_tree_with_more_than_the_maximum_number_of_nodes_is_not_generated() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"result:this result:item <uri:a> .\n" +
+				"<uri:a> <uri:p> <uri:b> .\n" +
+				"<uri:b> <uri:p> <uri:c> .");
+		assertEquals(3, countNodes(new RdfTreeGenerator(
+				RdfTreeGeneratorOptions.builder().maximumNodes(3).build()).generateRdfTree(model)));
+
+		thrown.expect(RdfTreeException.class);
+		thrown.expectMessage("The tree has more than the maximum of 2 nodes");
+		new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().maximumNodes(2).build()).generateRdfTree(model);
+	}
+
+	@Test
+	public void an_indexed_tree_is_identical_to_the_expected_json() throws RdfTreeException {
+		RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder()
+				.indexStrategy(RdfTreeGeneratorOptions.IndexStrategy.INDEX)
+				.build());
+		TestResourceLoader.assertFixturesGiveTheirJson(generator);
+	}
+
+	@Test
+	public void a_custom_result_ontology_prefix_is_used_for_every_result_term() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://example.com/result#> .\n" +
+				"result:this result:listItem <uri:a>, <uri:b> .\n" +
+				"result:this result:orderByPredicate <uri:p> .\n" +
+				"result:this result:sortOrder result:DescendingOrder .\n" +
+				"result:meta result:totalResults 2 .\n" +
+				"<uri:a> <uri:p> \"1\" .\n" +
+				"<uri:b> <uri:p> \"2\" .");
+		RdfTree tree = new RdfTreeGenerator("http://example.com/result#").generateRdfTree(model);
+		assertEquals(Integer.valueOf(2), tree.getTotalResults());
+		assertEquals("uri:b", tree.getChildren().get(0).getNode().asResource().getURI());
+	}
+
+	@Test
+	public void one_generator_and_vocabulary_cache_can_be_shared_by_many_threads() throws Exception {
+		final RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder()
+				.vocabularyCache(new VocabularyCache())
+				.build());
+		final List<String> fixtures = Lists.newArrayList(
+				"fixtures/ben-ainslie", "fixtures/athletes", "fixtures/creative-works", "fixtures/10-creative-works");
+
+		List<Future<Void>> results = Lists.newArrayList();
+		for (int i = 0; i < 32; i++) {
+			final String fixture = fixtures.get(i % fixtures.size());
+			results.add(executorService.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					assertEquals(
+							TestResourceLoader.loadClasspathResourceAsString(fixture + ".json"),
+							generator.generateRdfTree(loadModel(fixture)).asJson());
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> result : results) {
+			result.get();
+		}
+	}
+
+	private static Model loadModel(String fixture) {
+		return ModelUtils.createJenaModel(TestResourceLoader.loadClasspathResourceAsString(fixture + ".ttl"));
+	}
+
+	private static int countNodes(RdfTree tree) {
+		int count = 1;
+		for (RdfTree child : tree.getChildren()) {
+			count += countNodes(child);
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,155 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RdfTreeGeneratorPagingTest {
+
+	private static final String RESULT = RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX;
+
+	private final RdfTreeGenerator generator = new RdfTreeGenerator();
+
+	private List<RDFNode> getItems(RdfTree list) {
+		List<RDFNode> items = Lists.newArrayList();
+		for (RdfTree item : list.getChildren()) {
+			items.add(item.getNode());
+		}
+		return items;
+	}
+
+	/**
+	 * The model with only the given list items, and the total number of results
+	 */
+	private Model withListItems(Model model, List<RDFNode> items, int totalResults) {
+		Model page = ModelFactory.createDefaultModel().add(model);
+		page.setNsPrefixes(model);
+		Resource resultThis = page.createResource(RESULT + "this");
+		for (Statement statement : model.listStatements(resultThis, page.createProperty(RESULT, "listItem"), (RDFNode) null).toList()) {
+			if (!items.contains(statement.getObject())) page.remove(statement);
+		}
+		page.createResource(RESULT + "meta").addLiteral(page.createProperty(RESULT, "totalResults"), totalResults);
+		return page;
+	}
+
+	@Test
+	public void a_page_of_an_ordered_list_holds_the_items_of_the_whole_list_at_those_positions() throws RdfTreeException {
+		Model model = new ResultGraphFactory().shape(ResultGraphFactory.Shape.LIST_WITH_ORDER_BY_PREDICATE)
+				.items(100).sharedFraction(0.2).inverseLinkDensity(0.2).createModel();
+		List<RDFNode> allItems = getItems(generator.generateRdfTree(model));
+
+		for (int[] page : new int[][] {{0, 20}, {40, 20}, {90, 20}, {0, 100}, {99, 1}}) {
+			RdfTree tree = generator.generateRdfTree(model, page[0], page[1]);
+			List<RDFNode> items = allItems.subList(page[0], Math.min(100, page[0] + page[1]));
+
+			assertEquals(items, getItems(tree));
+			assertEquals(Integer.valueOf(100), tree.getTotalResults());
+			assertEquals(generator.generateRdfTree(withListItems(model, items, 100)).asJson(), tree.asJson());
+		}
+	}
+
+	@Test
+	public void a_page_of_a_descending_list_is_in_descending_order() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(TestResourceLoader.loadClasspathResourceAsString("fixtures/creative-works-about-cardiff.ttl"));
+		List<RDFNode> allItems = getItems(generator.generateRdfTree(model));
+
+		assertEquals(allItems.subList(3, 8), getItems(generator.generateRdfTree(model, 3, 5)));
+	}
+
+	@Test
+	public void a_page_of_items_without_values_holds_the_items_of_the_whole_list_at_those_positions() throws RdfTreeException {
+		for (String sortOrder : Lists.newArrayList("result:AscendingOrder", "result:DescendingOrder")) {
+			Model model = ModelUtils.createJenaModel(
+					"@prefix result: <" + RESULT + "> .\n" +
+					"result:this result:listItem <uri:i0>, <uri:i1>, <uri:i2>, <uri:i3>, <uri:i4>, <uri:i5> ;\n" +
+					"  result:orderByPredicate <uri:rank> ;\n" +
+					"  result:sortOrder " + sortOrder + " .\n" +
+					"<uri:i3> <uri:rank> 2 .\n" +
+					"<uri:i0> <uri:rank> 1 .");
+			List<RDFNode> allItems = getItems(generator.generateRdfTree(model));
+
+			List<String> uris = Lists.newArrayList();
+			for (RDFNode item : allItems) {
+				uris.add(item.asResource().getURI());
+			}
+			List<String> ascending = Lists.newArrayList("uri:i1", "uri:i2", "uri:i4", "uri:i5", "uri:i0", "uri:i3");
+			assertEquals(sortOrder.equals("result:AscendingOrder") ? ascending : Lists.reverse(ascending), uris);
+
+			for (int offset = 0; offset < 6; offset++) {
+				for (int limit = 1; offset + limit <= 6; limit++) {
+					assertEquals(sortOrder + " " + offset + "+" + limit,
+							allItems.subList(offset, offset + limit), getItems(generator.generateRdfTree(model, offset, limit)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void a_list_described_by_result_next_is_paged() throws RdfTreeException {
+		Model model = new ResultGraphFactory().shape(ResultGraphFactory.Shape.LIST).items(30).createModel();
+		List<RDFNode> allItems = getItems(generator.generateRdfTree(model));
+
+		RdfTree tree = generator.generateRdfTree(model, 10, 5);
+
+		assertEquals(allItems.subList(10, 15), getItems(tree));
+		assertEquals(Integer.valueOf(30), tree.getTotalResults());
+	}
+
+	@Test
+	public void the_total_results_of_result_meta_are_kept() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(TestResourceLoader.loadClasspathResourceAsString("fixtures/creative-works-about-cardiff.ttl"));
+		model.createResource(RESULT + "meta").addLiteral(model.createProperty(RESULT, "totalResults"), 5000);
+
+		assertEquals(Integer.valueOf(5000), generator.generateRdfTree(model, 0, 10).getTotalResults());
+	}
+
+	@Test
+	public void a_page_beyond_the_end_of_the_list_has_no_items() throws RdfTreeException {
+		Model model = new ResultGraphFactory().shape(ResultGraphFactory.Shape.LIST_WITH_ORDER_BY_PREDICATE).items(10).createModel();
+
+		RdfTree tree = generator.generateRdfTree(model, 20, 10);
+
+		assertEquals(0, tree.getChildren().size());
+		assertEquals(Integer.valueOf(10), tree.getTotalResults());
+	}
+
+	@Test
+	public void pages_of_a_list_are_cached_apart() throws RdfTreeException {
+		Model model = new ResultGraphFactory().shape(ResultGraphFactory.Shape.LIST_WITH_ORDER_BY_PREDICATE).items(30).createModel();
+		OutputCache cache = new OutputCache();
+		RdfTreeGenerator cachingGenerator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().outputCache(cache).build());
+
+		for (int i = 0; i < 2; i++) {
+			for (int offset = 0; offset < 30; offset += 10) {
+				assertEquals(generator.generateRdfTree(model, offset, 10).asJson(), cachingGenerator.generateJson(model, offset, 10));
+			}
+		}
+		assertEquals(3, cache.size());
+		assertEquals(3, cache.hitCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void the_offset_cannot_be_negative() throws RdfTreeException {
+		generator.generateRdfTree(new ResultGraphFactory().createModel(), -1, 10);
+	}
+
+	@Test
+	public void a_list_is_not_paged_by_default() throws RdfTreeException {
+		Model model = new ResultGraphFactory().shape(ResultGraphFactory.Shape.LIST_WITH_ORDER_BY_PREDICATE).items(10).createModel();
+
+		RdfTree tree = generator.generateRdfTree(model);
+
+		assertEquals(10, tree.getChildren().size());
+		assertNull(tree.getTotalResults());
+	}
+
+}
@@ -0,0 +1,69 @@
+package daverog.jsonld.tree;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RdfTreeGeneratorParallelTest {
+
+	private ExecutorService executorService;
+	private RdfTreeGenerator generator;
+
+	@Before
+	public void setUp() {
+		executorService = Executors.newFixedThreadPool(4);
+		generator = new RdfTreeGenerator(executorService);
+	}
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void lists_expanded_in_parallel_are_identical_to_the_expected_json() throws RdfTreeException {
+		assertJsonMatchesFixture("fixtures/athletes");
+		assertJsonMatchesFixture("fixtures/creative-works");
+		assertJsonMatchesFixture("fixtures/10-creative-works");
+	}
+
+	@Test
+	public void items_expanded_in_parallel_are_identical_to_the_expected_json() throws RdfTreeException {
+		assertJsonMatchesFixture("fixtures/ben-ainslie");
+		assertJsonMatchesFixture("fixtures/creativework");
+	}
+
+	@Test
+	public void a_large_list_expanded_in_parallel_is_identical_to_one_expanded_sequentially() throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/creative-works-about-cardiff.ttl"));
+		String sequentialJson = new RdfTreeGenerator().generateRdfTree(model).asJson();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(sequentialJson, generator.generateRdfTree(model).asJson());
+		}
+	}
+
+	@Test
+	public void a_statement_index_can_be_used_in_parallel() throws RdfTreeException {
+		StatementIndex index = new StatementIndex(ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/athletes.ttl")));
+		assertEquals(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/athletes.json"),
+				generator.generateRdfTree(index).asJson());
+	}
+
+	private void assertJsonMatchesFixture(String fixture) throws RdfTreeException {
+		Model model = ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString(fixture + ".ttl"));
+		assertEquals(
+				TestResourceLoader.loadClasspathResourceAsString(fixture + ".json"),
+				generator.generateRdfTree(model).asJson());
+	}
+
+}
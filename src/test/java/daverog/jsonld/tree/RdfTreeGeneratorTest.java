@@ -1,7 +1,11 @@
 package daverog.jsonld.tree;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,6 +14,7 @@ import java.io.IOException;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class RdfTreeGeneratorTest {
@@ -527,6 +532,38 @@ public class RdfTreeGeneratorTest {
 				rdfTree.asHtml("/things?uri="));
 	}	
 	
+	@Test
+	public void aTreeGeneratedFromAStatementIndexIsTheSameAsOneGeneratedFromTheModel() throws RdfTreeException {
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			assertEquals(TestResourceLoader.loadFixtureJson(fixture),
+					generator.generateRdfTree(new StatementIndex(TestResourceLoader.loadFixture(fixture))).asJson());
+			assertEquals(TestResourceLoader.loadFixtureJson(fixture),
+					generator.generateRdfTree(StatementIndex.readTurtle(
+							TestResourceLoader.loadClasspathResourceAsString("fixtures/" + fixture + ".ttl"))).asJson());
+		}
+	}
+
+	@Test
+	public void aStatementIndexGivesTheSameTreeEachTimeItIsUsed() throws RdfTreeException {
+		StatementIndex index = new StatementIndex(TestResourceLoader.loadFixture("10-creative-works"));
+		for (int i = 0; i < 2; i++) {
+			assertEquals(TestResourceLoader.loadFixtureJson("10-creative-works"), generator.generateRdfTree(index).asJson());
+		}
+	}
+
+	@Test(expected = RdfTreeException.class)
+	public void turtleWithoutResultThisCannotBeGeneratedFromAStatementIndex() throws RdfTreeException {
+		generator.generateRdfTree(StatementIndex.readTurtle("<uri:a> <uri:b> <uri:c> ."));
+	}
+
+	@Test
+	public void everyNodeOfAGeneratedTreeAndListIsConstructed() throws RdfTreeException {
+		assertTrue(generator.generateRdfTree(ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/ben-ainslie.ttl"))).isFullyConstructed());
+		assertTrue(generator.generateRdfTree(ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/athletes.ttl"))).isFullyConstructed());
+	}
+
 	@Test
 	public void aListOfCreativeWorksIsRenderedAsAJsonTree() throws RdfTreeException {
 		Model model = ModelUtils.createJenaModel(
@@ -833,6 +870,53 @@ public class RdfTreeGeneratorTest {
         }
     }
 
+    @Test
+    public void aResultNextCycleCausesAnError() {
+        try {
+            Model model = ModelUtils.createJenaModel(
+                    "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                    "result:this result:next <uri:a> . \n" +
+                    "<uri:a> result:next <uri:b> . \n" +
+                    "<uri:b> result:next <uri:a> .");
+            generator.generateRdfTree(model);
+            fail("RdfTreeException expected");
+        } catch (RdfTreeException e) {
+            assertEquals("result:next forms a cycle at uri:a", e.getMessage());
+        }
+    }
+
+    @Test
+    public void moreThanOneResultNextForAnItemCausesAnError() {
+        try {
+            Model model = ModelUtils.createJenaModel(
+                    "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                    "result:this result:next <uri:a> . \n" +
+                    "<uri:a> result:next <uri:b> . \n" +
+                    "<uri:a> result:next <uri:c> .");
+            generator.generateRdfTree(model);
+            fail("RdfTreeException expected");
+        } catch (RdfTreeException e) {
+            assertEquals("too many result:next predicates assigned to uri:a", e.getMessage());
+        }
+    }
+
+    @Test
+    public void aListOfOneHundredThousandItemsDescribedByResultNextIsGenerated() throws RdfTreeException {
+        Model model = ModelFactory.createDefaultModel();
+        Property next = model.createProperty(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX + "next");
+        Resource previous = model.createResource(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX + "this");
+        for (int i = 0; i < 100000; i++) {
+            Resource item = model.createResource("uri:item" + i);
+            model.add(previous, next, item);
+            previous = item;
+        }
+
+        RdfTree rdfTree = generator.generateRdfTree(model);
+        assertEquals(100000, rdfTree.getChildren().size());
+        assertEquals(model.getResource("uri:item0"), rdfTree.getChildren().get(0).getNode());
+        assertEquals(model.getResource("uri:item99999"), rdfTree.getChildren().get(99999).getNode());
+    }
+
     @Test
     public void totalResultsCountIsRenderedCorrectly() throws RdfTreeException {
         Model model = ModelUtils.createJenaModel(
@@ -865,4 +949,32 @@ public class RdfTreeGeneratorTest {
                 "}",
                 rdfTree.asJson());
     }
+
+    @Test
+    public void lazyNameResolutionLeavesTermsThatAreNotReachedOutOfTheContext() throws RdfTreeException {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                "@prefix prfx: <http://prefix.com/> ." +
+                "result:this result:item <uri:a> . \n" +
+                "<uri:a> prfx:reached \"value\" . \n" +
+                "<uri:b> prfx:unreached <uri:c> .");
+        RdfTreeGenerator lazyGenerator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().lazyNameResolution(true).build());
+        assertEquals(
+                "{\n" +
+                "  \"@id\": \"uri:a\",\n" +
+                "  \"prfx:reached\": \"value\",\n" +
+                "  \"@context\": {\n" +
+                "    \"prfx:reached\": {\n" +
+                "      \"@id\": \"http://prefix.com/reached\"\n" +
+                "    }\n" +
+                "  }\n" +
+                "}",
+                lazyGenerator.generateRdfTree(model).asJson());
+    }
+
+    @Test
+    public void lazyNameResolutionGivesTheSameJsonForFixturesWhoseTermsAreAllReached() throws RdfTreeException, IOException {
+        TestResourceLoader.assertFixturesGiveTheirJson(new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().lazyNameResolution(true).build()),
+                ImmutableList.of("ben-ainslie", "athletes", "creative-works"));
+    }
 }
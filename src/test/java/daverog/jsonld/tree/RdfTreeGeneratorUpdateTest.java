@@ -0,0 +1,255 @@
+package daverog.jsonld.tree;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.vocabulary.RDF;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RdfTreeGeneratorUpdateTest {
+
+	private static final String BEN_AINSLIE = "http://www.bbc.co.uk/things/4e40ce40-b632-4a42-98d7-cf97067f7bf9#id";
+	private static final String TEAM_GB = "http://www.bbc.co.uk/things/7ef7ffdf-f101-4470-adc0-38a5abac9122#id";
+	private static final String DOMAIN = "http://www.bbc.co.uk/ontologies/domain/";
+	private static final String OLY = "http://www.bbc.co.uk/ontologies/2012olympics/";
+	private static final String SPORT = "http://www.bbc.co.uk/ontologies/sport/";
+	private static final String SAM002 = "http://www.bbc.co.uk/things/2012/sam002#id";
+
+	private final RdfTreeGenerator generator = new RdfTreeGenerator();
+
+	private Model model = ModelUtils.createJenaModel(TestResourceLoader.loadClasspathResourceAsString("fixtures/ben-ainslie.ttl"));
+	private final ModelChanges changes = new ModelChanges();
+
+	private RdfTree generateAndListen(RdfTreeGenerator generator) throws RdfTreeException {
+		RdfTree tree = generator.generateRdfTree(model);
+		model.register(changes);
+		return tree;
+	}
+
+	private RdfTree updateAndCompare(RdfTreeGenerator generator, RdfTree tree) throws RdfTreeException {
+		RdfTree updatedTree = generator.updateRdfTree(tree, model, changes);
+		changes.clear();
+		assertEquals(generator.generateRdfTree(model).asJson(), updatedTree.asJson());
+		return updatedTree;
+	}
+
+	@Test
+	public void a_literal_added_to_a_node_in_the_tree_is_added_in_place() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "GB");
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_literal_removed_from_a_node_in_the_tree_is_removed_in_place() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.remove(model.createResource(TEAM_GB).getProperty(model.createProperty(DOMAIN, "name")));
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void removing_the_last_literal_with_a_name_generates_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.remove(model.createResource(BEN_AINSLIE).getProperty(model.createProperty(OLY, "gender")));
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_change_that_does_not_reach_the_tree_leaves_it_as_it_is() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource("http://example.com/elsewhere").addProperty(model.createProperty(DOMAIN, "name"), "Elsewhere");
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_new_link_between_resources_generates_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "member"), model.createResource(BEN_AINSLIE));
+		model.createResource("http://example.com/coach").addProperty(model.createProperty(DOMAIN, "coaches"), model.createResource(BEN_AINSLIE));
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_new_link_with_known_names_is_expanded_in_place() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(SPORT, "competesIn"), model.createResource(SAM002));
+		Resource coach = model.createResource("http://example.com/coach");
+		coach.addProperty(model.createProperty("http://purl.org/vocab/participation/schema#", "role_at"), model.createResource(BEN_AINSLIE));
+		coach.addProperty(model.createProperty(DOMAIN, "name"), "Coach");
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_removed_link_is_removed_with_its_subtree_in_place() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.remove(model.createResource(BEN_AINSLIE), model.createProperty(SPORT, "competesIn"), model.createResource(SAM002));
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_type_changed_to_a_known_type_is_changed_in_place() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		Resource competition = model.createResource(SAM002);
+		model.remove(competition.getProperty(RDF.type));
+		competition.addProperty(RDF.type, model.createResource(SPORT + "SportsDiscipline"));
+
+		assertSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_tree_generated_again_is_left_as_it_was() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		String json = tree.asJson();
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "GB");
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "Team GB", "en");
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+		assertEquals(json, tree.asJson());
+	}
+
+	@Test
+	public void an_update_to_more_than_the_maximum_nodes_fails_and_leaves_the_tree_as_it_was() throws RdfTreeException {
+		RdfTreeGenerator limitedGenerator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder()
+				.maximumNodes(countNodes(generator.generateRdfTree(model))).build());
+		RdfTree tree = generateAndListen(limitedGenerator);
+		String json = tree.asJson();
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "GB");
+
+		try {
+			limitedGenerator.updateRdfTree(tree, model, changes);
+			fail("Expected the update to exceed the maximum nodes");
+		} catch (RdfTreeException e) {
+			assertEquals(json, tree.asJson());
+		}
+	}
+
+	private int countNodes(RdfTree tree) {
+		int nodes = 1;
+		for (RdfTree child : tree.getChildren()) {
+			nodes += countNodes(child);
+		}
+		return nodes;
+	}
+
+	@Test
+	public void a_new_type_generates_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(RDF.type, model.createResource("http://example.com/Team"));
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_literal_with_a_new_name_generates_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "motto"), "Better never stops");
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_literal_equal_in_value_to_another_generates_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "Team GB", "en");
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void statements_removed_in_bulk_generate_the_tree_again() throws RdfTreeException {
+		RdfTree tree = generateAndListen(generator);
+		model.removeAll(model.createResource(BEN_AINSLIE), model.createProperty(OLY, "gender"), null);
+
+		assertNotSame(tree, updateAndCompare(generator, tree));
+	}
+
+	@Test
+	public void a_lazily_named_tree_is_updated_in_place_when_no_name_changes() throws RdfTreeException {
+		RdfTreeGenerator lazyGenerator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().lazyNameResolution(true).build());
+		RdfTree tree = generateAndListen(lazyGenerator);
+		model.createResource(TEAM_GB).addProperty(model.createProperty(DOMAIN, "name"), "GB");
+		tree = updateAndCompare(lazyGenerator, tree);
+
+		model.createResource(TEAM_GB).addProperty(model.createProperty(OLY, "gender"), "M");
+		updateAndCompare(lazyGenerator, tree);
+	}
+
+	@Test
+	public void updates_to_a_large_list_are_the_same_as_generating_it_again() throws RdfTreeException {
+		for (RdfTreeGenerator generator : Lists.newArrayList(
+				this.generator,
+				new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().lazyNameResolution(true).build()),
+				new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().indexStrategy(RdfTreeGeneratorOptions.IndexStrategy.INDEX).build()))) {
+			model = new ResultGraphFactory().items(30).branching(2).depth(2).literalsPerNode(2)
+					.sharedFraction(0.3).inverseLinkDensity(0.2).createModel();
+			changes.clear();
+			RdfTree tree = generateAndListen(generator);
+
+			Random random = new Random(1);
+			List<Resource> subjects = model.listSubjects().toList();
+			for (int i = 0; i < 20; i++) {
+				Resource subject = subjects.get(random.nextInt(subjects.size()));
+				Property predicate = model.createProperty(ResultGraphFactory.NS, "literal" + random.nextInt(3));
+				List<Statement> values = subject.listProperties(predicate).toList();
+				if (!values.isEmpty() && random.nextBoolean()) {
+					model.remove(values.get(random.nextInt(values.size())));
+				} else {
+					subject.addProperty(predicate, "Value " + i);
+				}
+				tree = updateAndCompare(generator, tree);
+			}
+			model.unregister(changes);
+		}
+	}
+
+	@Test
+	public void links_changed_in_a_large_list_are_the_same_as_generating_it_again() throws RdfTreeException {
+		for (RdfTreeGenerator generator : Lists.newArrayList(
+				this.generator,
+				new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().lazyNameResolution(true).build()),
+				new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().indexStrategy(RdfTreeGeneratorOptions.IndexStrategy.INDEX).build()))) {
+			model = new ResultGraphFactory().items(30).branching(2).depth(2).literalsPerNode(2)
+					.sharedFraction(0.3).inverseLinkDensity(0.2).createModel();
+			changes.clear();
+			RdfTree tree = generateAndListen(generator);
+
+			Random random = new Random(2);
+			Property mentions = model.createProperty(ResultGraphFactory.NS, "mentions");
+			List<Resource> subjects = model.listSubjects().toList();
+			int updatedInPlace = 0;
+			for (int i = 0; i < 20; i++) {
+				List<Statement> links = model.listStatements(null, mentions, (RDFNode) null).toList();
+				if (random.nextBoolean()) {
+					model.remove(links.get(random.nextInt(links.size())));
+				} else {
+					subjects.get(random.nextInt(subjects.size())).addProperty(mentions, subjects.get(random.nextInt(subjects.size())));
+				}
+				RdfTree updatedTree = updateAndCompare(generator, tree);
+				if (updatedTree == tree) updatedInPlace++;
+				tree = updatedTree;
+			}
+			if (!generator.getOptions().isLazyNameResolution()) assertTrue(updatedInPlace > 0);
+			model.unregister(changes);
+		}
+	}
+
+}
@@ -1,9 +1,14 @@
 package daverog.jsonld.tree;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import com.hp.hpl.jena.rdf.model.Model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import static org.junit.Assert.assertEquals;
 
 public class RdfTreeGeneratorXmlTest {
@@ -123,4 +128,82 @@ public class RdfTreeGeneratorXmlTest {
                         "</List>",
                 generator.generateRdfTree(model).asXml());
     }
+
+    @Test
+    public void compactXmlHasNoWhitespaceBetweenElements() throws RdfTreeException {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                        "result:this result:item <uri:a> . \n" +
+                        "<uri:a> <uri:b> <uri:c> ; <uri:d> \"value\" .");
+        assertEquals(
+                "<Thing id=\"uri:a\"><uri:d>value</uri:d><uri:b id=\"uri:c\"/></Thing>",
+                generator.generateRdfTree(model).asXml(WriterOptions.COMPACT));
+    }
+
+    @Test
+    public void xmlCanBeIndentedWithTabs() throws RdfTreeException {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                        "result:this result:item <uri:a> . \n" +
+                        "<uri:a> <uri:b> <uri:c> .");
+        assertEquals(
+                "<Thing id=\"uri:a\">\n" +
+                        "\t<uri:b id=\"uri:c\"/>\n" +
+                        "</Thing>",
+                generator.generateRdfTree(model).asXml(WriterOptions.builder().indent("\t").build()));
+    }
+
+    @Test
+    public void compactHtmlHasNoWhitespaceBetweenElements() throws RdfTreeException {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                        "result:this result:item <uri:a> . \n" +
+                        "<uri:a> <uri:b> \"value\" .");
+        assertEquals(
+                "<html><body><a href=\"/things?uri=uri%3Aa\" title=\"uri:a\">uri:a</a><ul><li>" +
+                        "<a href=\"/things?uri=uri%3Ab\" title=\"uri:b\" style=\"font-weight: bold;\">uri:b:</a>" +
+                        "<span>value</span></li></ul></body></html>",
+                generator.generateRdfTree(model).asHtml("/things?uri=", WriterOptions.COMPACT));
+    }
+
+    @Test
+    public void xmlStreamedToAWriterIsIdenticalToTheXmlString() throws RdfTreeException, IOException {
+        for (String fixture : Iterables.concat(TestResourceLoader.FIXTURES, ImmutableList.of("multi-lingual"))) {
+            RdfTree tree = generator.generateRdfTree(TestResourceLoader.loadFixture(fixture));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            tree.writeXml(output);
+            assertEquals(tree.asXml(), output.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void htmlStreamedToAWriterIsIdenticalToTheHtmlString() throws RdfTreeException, IOException {
+        for (String fixture : Iterables.concat(TestResourceLoader.FIXTURES, ImmutableList.of("multi-lingual"))) {
+            RdfTree tree = generator.generateRdfTree(TestResourceLoader.loadFixture(fixture));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            tree.writeHtml(output, "/things?uri=");
+            assertEquals(tree.asHtml("/things?uri="), output.toString("UTF-8"));
+        }
+    }
+
+    @Test
+    public void anEntirelyEmptyModelResultsInHtmlWithNoData() throws RdfTreeException {
+        assertEquals("<html><body>No data</body></html>", generator.generateRdfTree(ModelUtils.createJenaModel("")).asHtml("/things?uri="));
+    }
+
+    @Test
+    public void theTotalResultsOfAListAreLinkedInHtml() throws RdfTreeException {
+        Model model = ModelUtils.createJenaModel(
+                "@prefix result: <http://purl.org/ontology/rdf-result/> ." +
+                        "result:this result:next <uri:a> . \n" +
+                        "result:meta result:totalResults 7 . \n" +
+                        "<uri:a> <uri:b> <uri:c> .");
+        assertEquals(
+                "<html><body><div><a href=\"/things?uri=http%3A%2F%2Fpurl.org%2Fontology%2Frdf-result%2FtotalResults\" " +
+                        "title=\"totalResults\" style=\"font-weight: bold;\">totalResults:</a><span>7</span></div>" +
+                        "<ol><li><a href=\"/things?uri=uri%3Aa\" title=\"uri:a\">uri:a</a><ul><li>" +
+                        "<a href=\"/things?uri=uri%3Ab\" title=\"uri:b\" style=\"font-weight: bold;\">uri:b:</a>" +
+                        "<span><a href=\"/things?uri=uri%3Ac\" title=\"uri:c\">uri:c</a></span></li></ul></li></ol></body></html>",
+                generator.generateRdfTree(model).asHtml("/things?uri=", WriterOptions.COMPACT));
+    }
 }
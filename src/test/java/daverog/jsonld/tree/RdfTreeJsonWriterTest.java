@@ -0,0 +1,199 @@
+package daverog.jsonld.tree;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RdfTreeJsonWriterTest {
+
+	private RdfTreeGenerator generator;
+
+	@Before
+	public void setUp() {
+		generator = new RdfTreeGenerator();
+	}
+
+	@Test
+	public void an_empty_tree_is_streamed_as_an_empty_object() throws RdfTreeException, IOException {
+		StringWriter output = new StringWriter();
+		generator.generateRdfTree(ModelUtils.createJenaModel("")).writeJson(output);
+		assertEquals("{}", output.toString());
+	}
+
+	@Test
+	public void a_streamed_item_is_identical_to_the_expected_json() throws RdfTreeException, IOException {
+		assertStreamedJsonMatchesFixture("fixtures/ben-ainslie");
+		assertStreamedJsonMatchesFixture("fixtures/ben-ainslie-different-tree-start");
+		assertStreamedJsonMatchesFixture("fixtures/creativework");
+	}
+
+	@Test
+	public void a_streamed_list_is_identical_to_the_expected_json() throws RdfTreeException, IOException {
+		assertStreamedJsonMatchesFixture("fixtures/athletes");
+		assertStreamedJsonMatchesFixture("fixtures/creative-works");
+		assertStreamedJsonMatchesFixture("fixtures/10-creative-works");
+	}
+
+	@Test
+	public void reverse_properties_blank_nodes_and_total_results_are_streamed() throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"result:this result:next <uri:a> .\n" +
+				"result:meta result:totalResults 12 .\n" +
+				"<uri:a> <uri:b> [ <uri:c> \"<b>&'\" ] .\n" +
+				"<uri:d> <uri:e> <uri:a> .");
+		assertEquals(
+				"{\n" +
+				"  \"totalResults\": 12,\n" +
+				"  \"results\": [\n" +
+				"    {\n" +
+				"      \"@id\": \"uri:a\",\n" +
+				"      \"uri:b\": [\n" +
+				"        {\n" +
+				"          \"uri:c\": \"\\u003cb\\u003e\\u0026\\u0027\"\n" +
+				"        }\n" +
+				"      ],\n" +
+				"      \"@reverse\": {\n" +
+				"        \"uri:e\": \"uri:d\"\n" +
+				"      }\n" +
+				"    }\n" +
+				"  ],\n" +
+				"  \"@context\": {\n" +
+				"    \"results\": {\n" +
+				"      \"@id\": \"@graph\"\n" +
+				"    }\n" +
+				"  }\n" +
+				"}",
+				streamJson(generator.generateRdfTree(model)));
+	}
+
+	@Test
+	public void json_streamed_to_an_output_stream_is_utf8_encoded() throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/multi-lingual.ttl"));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		generator.generateRdfTree(model).writeJson(output);
+		assertEquals(generator.generateRdfTree(model).asJson(), output.toString("UTF-8"));
+	}
+
+	@Test
+	public void the_context_of_a_list_names_the_results_in_order_among_the_other_names() throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"@prefix a: <http://a.com/> .\n" +
+				"@prefix z: <http://z.com/> .\n" +
+				"result:this result:next <uri:x> .\n" +
+				"<uri:x> a:name \"1\" ; z:name <uri:y> .");
+		assertEquals(
+				"{\n" +
+				"  \"results\": [\n" +
+				"    {\n" +
+				"      \"@id\": \"uri:x\",\n" +
+				"      \"a:name\": \"1\",\n" +
+				"      \"z:name\": \"uri:y\"\n" +
+				"    }\n" +
+				"  ],\n" +
+				"  \"@context\": {\n" +
+				"    \"a:name\": {\n" +
+				"      \"@id\": \"http://a.com/name\"\n" +
+				"    },\n" +
+				"    \"results\": {\n" +
+				"      \"@id\": \"@graph\"\n" +
+				"    },\n" +
+				"    \"z:name\": {\n" +
+				"      \"@id\": \"http://z.com/name\",\n" +
+				"      \"@type\": \"@id\"\n" +
+				"    }\n" +
+				"  }\n" +
+				"}",
+				streamJson(generator.generateRdfTree(model)));
+	}
+
+	@Test
+	public void a_name_overridden_as_results_is_replaced_by_the_results_in_the_context() throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"@prefix r: <http://r.com/> .\n" +
+				"result:this result:next <uri:x> .\n" +
+				"<uri:x> r:results \"r\" .");
+		String json = streamJson(generator.generateRdfTree(model, ImmutableMap.of("http://r.com/results", "results")));
+		assertTrue(json.endsWith(
+				"  \"@context\": {\n" +
+				"    \"results\": {\n" +
+				"      \"@id\": \"@graph\"\n" +
+				"    }\n" +
+				"  }\n" +
+				"}"));
+	}
+
+	@Test
+	public void the_context_is_rendered_once_for_a_tree_that_is_written_many_times() throws RdfTreeException, IOException {
+		RdfTree tree = generator.generateRdfTree(ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/ben-ainslie.ttl")));
+		String json = streamJson(tree);
+		JsonLdContext context = tree.getNameResolver().getJsonLdContext();
+		assertEquals(json, streamJson(tree));
+		assertEquals(json, tree.asJson());
+		assertSame(context, tree.getNameResolver().getJsonLdContext());
+	}
+
+	@Test
+	public void compact_json_has_no_whitespace_between_tokens() throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix result: <http://purl.org/ontology/rdf-result/> .\n" +
+				"@prefix a: <http://a.com/> .\n" +
+				"result:this result:next <uri:x> .\n" +
+				"<uri:x> a:name \"1\" ; a:link <uri:y> .");
+		RdfTree tree = generator.generateRdfTree(model);
+		String expected = "{\"results\":[{\"@id\":\"uri:x\",\"a:name\":\"1\",\"a:link\":\"uri:y\"}]," +
+				"\"@context\":{\"a:link\":{\"@id\":\"http://a.com/link\",\"@type\":\"@id\"}," +
+				"\"a:name\":{\"@id\":\"http://a.com/name\"},\"results\":{\"@id\":\"@graph\"}}}";
+		assertEquals(expected, tree.asJson(WriterOptions.COMPACT));
+
+		StringWriter output = new StringWriter();
+		tree.writeJson(output, WriterOptions.COMPACT);
+		assertEquals(expected, output.toString());
+	}
+
+	@Test
+	public void json_in_every_layout_has_the_same_content() throws RdfTreeException {
+		for (String fixture : TestResourceLoader.FIXTURES) {
+			RdfTree tree = generator.generateRdfTree(TestResourceLoader.loadFixture(fixture));
+			JsonElement pretty = new JsonParser().parse(tree.asJson());
+			assertEquals(pretty, new JsonParser().parse(tree.asJson(WriterOptions.COMPACT)));
+			assertEquals(pretty, new JsonParser().parse(tree.asJson(WriterOptions.builder().indent("\t").build())));
+			assertEquals(TestResourceLoader.loadFixtureJson(fixture), tree.asJson(WriterOptions.DEFAULT));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void an_indent_cannot_contain_anything_but_spaces_and_tabs() {
+		WriterOptions.builder().indent("  x");
+	}
+
+	private void assertStreamedJsonMatchesFixture(String fixture) throws RdfTreeException, IOException {
+		Model model = ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString(fixture + ".ttl"));
+		assertEquals(
+				TestResourceLoader.loadClasspathResourceAsString(fixture + ".json"),
+				streamJson(generator.generateRdfTree(model)));
+	}
+
+	private String streamJson(RdfTree tree) throws IOException {
+		StringWriter output = new StringWriter();
+		tree.writeJson(output);
+		return output.toString();
+	}
+
+}
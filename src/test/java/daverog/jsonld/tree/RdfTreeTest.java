@@ -1,8 +1,143 @@
 package daverog.jsonld.tree;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class RdfTreeTest {
 
-	
+	private final Model model = ModelUtils.createJenaModel(
+			"<uri:a> <uri:p> <uri:b> .\n" +
+			"<uri:b> <uri:p> <uri:c> .\n" +
+			"<uri:c> <uri:p> <uri:d> .");
+	private final NameResolver nameResolver = new NameResolver(
+			model, Lists.<String>newArrayList(), Maps.<String, String>newHashMap(), RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX);
+
+	@Test
+	public void the_nodes_of_all_parents_are_found_but_not_the_node_itself() {
+		RdfTree a = new RdfTree(model, nameResolver, model.getResource("uri:a"), new HashMap<RDFNode, Integer>());
+		RdfTree b = addChild(a, "uri:b");
+		RdfTree c = addChild(b, "uri:c");
+
+		assertTrue(c.hasParentWithNode(model.getResource("uri:a")));
+		assertTrue(c.hasParentWithNode(model.getResource("uri:b")));
+		assertFalse(c.hasParentWithNode(model.getResource("uri:c")));
+		assertFalse(b.hasParentWithNode(model.getResource("uri:c")));
+		assertFalse(a.hasParentWithNode(model.getResource("uri:a")));
+	}
+
+	@Test
+	public void the_nodes_of_all_parents_of_a_deep_tree_are_found() {
+		RdfTree tree = new RdfTree(model, nameResolver, model.getResource("uri:n0"), new HashMap<RDFNode, Integer>());
+		for (int i = 1; i < 200; i++) {
+			tree = addChild(tree, "uri:n" + i);
+		}
+
+		for (int i = 0; i < 199; i++) {
+			assertTrue(tree.hasParentWithNode(model.getResource("uri:n" + i)));
+		}
+		assertFalse(tree.hasParentWithNode(model.getResource("uri:n199")));
+		for (int i = 200; i < 400; i++) {
+			assertFalse(tree.hasParentWithNode(model.getResource("uri:n" + i)));
+		}
+	}
+
+	@Test
+	public void the_nodes_of_list_items_are_found_from_anywhere_in_the_list() {
+		RdfTree list = new RdfTree(model, nameResolver, new HashMap<RDFNode, Integer>(), null);
+		list.addListItem(model.getResource("uri:a"));
+		list.addListItem(model.getResource("uri:d"));
+		RdfTree b = addChild(list.getChildren().get(0), "uri:b");
+
+		assertTrue(b.hasListRootWithNode(model.getResource("uri:a")));
+		assertTrue(b.hasListRootWithNode(model.getResource("uri:d")));
+		assertFalse(b.hasListRootWithNode(model.getResource("uri:b")));
+		assertFalse(list.hasListRootWithNode(model.getResource("uri:a")));
+		assertFalse(b.hasParentWithNode(model.getResource("uri:d")));
+	}
+
+	@Test
+	public void a_tree_without_a_list_has_no_list_items() {
+		RdfTree a = new RdfTree(model, nameResolver, model.getResource("uri:a"), new HashMap<RDFNode, Integer>());
+		RdfTree b = addChild(a, "uri:b");
+
+		assertFalse(b.hasListRootWithNode(model.getResource("uri:a")));
+	}
+
+	@Test
+	public void a_leaf_has_no_children_and_only_the_list_has_the_total_results() {
+		RdfTree list = new RdfTree(model, nameResolver, new HashMap<RDFNode, Integer>(), 2);
+		list.addListItem(model.getResource("uri:a"));
+		RdfTree b = addChild(list.getChildren().get(0), "uri:b");
+
+		assertTrue(b.getChildren().isEmpty());
+		assertTrue(b.isChildlessResource());
+		assertEquals(Integer.valueOf(2), list.getTotalResults());
+		assertEquals(null, b.getTotalResults());
+	}
+
+	@Test
+	public void generated_trees_are_already_in_the_order_their_children_compare_in() throws RdfTreeException {
+		RdfTreeGenerator generator = new RdfTreeGenerator();
+		for (String fixture : Iterables.concat(TestResourceLoader.FIXTURES, ImmutableList.of("creative-works-about-cardiff", "multi-lingual"))) {
+			assertChildrenAreSortedByCompareTo(generator.generateRdfTree(TestResourceLoader.loadFixture(fixture)));
+		}
+	}
+
+	@Test
+	public void a_canonical_tree_is_sorted_again_when_a_child_is_added() {
+		RdfTree a = new RdfTree(model, nameResolver, model.getResource("uri:a"), new HashMap<RDFNode, Integer>());
+		a.addChild(model.createStatement(model.getResource("uri:a"), model.getProperty("uri:q"), model.getResource("uri:c")));
+		a.canonicalise();
+		RdfTree c = a.getChildren().get(0);
+
+		a.addChild(model.createStatement(model.getResource("uri:a"), model.getProperty("uri:p"), model.getResource("uri:b")));
+		a.canonicalise();
+		assertEquals("uri:b", a.getChildren().get(0).getNode().asResource().getURI());
+
+		// giving both children children of their own changes their sort keys
+		c.addChild(model.createStatement(model.getResource("uri:c"), model.getProperty("uri:p"), model.getResource("uri:d")));
+		a.getChildren().get(0).addChild(model.createStatement(model.getResource("uri:b"), model.getProperty("uri:p"), model.getResource("uri:d")));
+		a.canonicalise();
+		assertChildrenAreSortedByCompareTo(a);
+	}
+
+	@Test
+	public void canonicalising_a_canonical_tree_changes_nothing() throws RdfTreeException {
+		RdfTree tree = new RdfTreeGenerator().generateRdfTree(ModelUtils.createJenaModel(
+				TestResourceLoader.loadClasspathResourceAsString("fixtures/ben-ainslie.ttl")));
+		String json = tree.asJson();
+		tree.canonicalise();
+		assertEquals(json, tree.asJson());
+	}
+
+	private void assertChildrenAreSortedByCompareTo(RdfTree tree) {
+		if (!tree.isList()) {
+			List<RdfTree> sorted = Lists.newArrayList(tree.getChildren());
+			Collections.sort(sorted);
+			assertEquals(sorted, tree.getChildren());
+		}
+		for (RdfTree child : tree.getChildren()) {
+			assertChildrenAreSortedByCompareTo(child);
+		}
+	}
+
+	private RdfTree addChild(RdfTree tree, String childUri) {
+		tree.addChild(model.createStatement(
+				tree.getNode().asResource(), model.getProperty("uri:p"), model.getResource(childUri)));
+		return tree.getChildren().get(tree.getChildren().size() - 1);
+	}
 
 }
@@ -0,0 +1,180 @@
+package daverog.jsonld.tree;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Creates synthetic RDF Result ontology graphs of a chosen shape and size,
+ * for measuring how generation scales with list length, fan-out, depth,
+ * shared 'reference data' nodes and inverse links.
+ *
+ * Every list item (or the single item) is the root of a tree of the given
+ * depth, in which each resource has the given number of children. Each child
+ * is, with the given probability, one of a small pool of shared reference
+ * nodes instead of a new resource. Each new resource is also, with the given
+ * probability, the object of a link from a random earlier resource.
+ *
+ * Graphs are reproducible: the same settings and seed give the same graph.
+ */
+public class ResultGraphFactory {
+
+	public static final String NS = "http://example.com/ns/";
+	public static final String ID = "http://example.com/id/";
+
+	public enum Shape {
+		ITEM,
+		LIST,
+		LIST_WITH_ORDER_BY_PREDICATE
+	}
+
+	private Shape shape = Shape.LIST;
+	private int items = 10;
+	private int branching = 2;
+	private int depth = 2;
+	private int literalsPerNode = 1;
+	private int referenceNodes = 10;
+	private double sharedFraction = 0.0;
+	private double inverseLinkDensity = 0.0;
+	private long seed = 1;
+
+	public ResultGraphFactory shape(Shape shape) {
+		this.shape = shape;
+		return this;
+	}
+
+	/**
+	 * The number of list items, ignored for {@link Shape#ITEM}
+	 */
+	public ResultGraphFactory items(int items) {
+		this.items = items;
+		return this;
+	}
+
+	public ResultGraphFactory branching(int branching) {
+		this.branching = branching;
+		return this;
+	}
+
+	public ResultGraphFactory depth(int depth) {
+		this.depth = depth;
+		return this;
+	}
+
+	public ResultGraphFactory literalsPerNode(int literalsPerNode) {
+		this.literalsPerNode = literalsPerNode;
+		return this;
+	}
+
+	public ResultGraphFactory referenceNodes(int referenceNodes) {
+		this.referenceNodes = referenceNodes;
+		return this;
+	}
+
+	/**
+	 * The probability, between 0 and 1, that a child is a shared reference node
+	 */
+	public ResultGraphFactory sharedFraction(double sharedFraction) {
+		this.sharedFraction = sharedFraction;
+		return this;
+	}
+
+	/**
+	 * The probability, between 0 and 1, that a new resource is linked to from an earlier one
+	 */
+	public ResultGraphFactory inverseLinkDensity(double inverseLinkDensity) {
+		this.inverseLinkDensity = inverseLinkDensity;
+		return this;
+	}
+
+	public ResultGraphFactory seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public Model createModel() {
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("result", RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX);
+		model.setNsPrefix("ex", NS);
+
+		Random random = new Random(seed);
+		Resource resultThis = model.createResource(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX + "this");
+		List<Resource> resources = Lists.newArrayList();
+
+		List<Resource> reference = Lists.newArrayList();
+		for (int i = 0; i < referenceNodes; i++) {
+			Resource referenceNode = model.createResource(ID + "reference/" + i);
+			referenceNode.addProperty(RDF.type, model.createResource(NS + "Reference"));
+			referenceNode.addProperty(model.createProperty(NS, "label"), "Reference " + i);
+			reference.add(referenceNode);
+		}
+
+		int roots = shape == Shape.ITEM ? 1 : items;
+		List<Integer> ranks = Lists.newArrayList();
+		for (int i = 0; i < roots; i++) {
+			ranks.add(i);
+		}
+		Collections.shuffle(ranks, random);
+
+		Resource previous = resultThis;
+		for (int i = 0; i < roots; i++) {
+			Resource root = model.createResource(ID + "item/" + i);
+			switch (shape) {
+				case ITEM:
+					resultThis.addProperty(model.createProperty(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX, "item"), root);
+					break;
+				case LIST:
+					previous.addProperty(model.createProperty(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX, "next"), root);
+					previous = root;
+					break;
+				case LIST_WITH_ORDER_BY_PREDICATE:
+					resultThis.addProperty(model.createProperty(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX, "listItem"), root);
+					root.addLiteral(model.createProperty(NS, "rank"), ranks.get(i).intValue());
+					break;
+			}
+			addTree(model, random, root, ID + "item/" + i, 0, reference, resources);
+		}
+
+		if (shape == Shape.LIST_WITH_ORDER_BY_PREDICATE) {
+			resultThis.addProperty(model.createProperty(RdfTree.DEFAULT_RESULT_ONTOLOGY_URI_PREFIX, "orderByPredicate"),
+					model.createResource(NS + "rank"));
+		}
+
+		return model;
+	}
+
+	private void addTree(Model model, Random random, Resource node, String uri, int level, List<Resource> reference, List<Resource> resources) {
+		node.addProperty(RDF.type, model.createResource(NS + "Thing" + level));
+		for (int i = 0; i < literalsPerNode; i++) {
+			node.addProperty(model.createProperty(NS, "literal" + i), "Value " + i + " of " + uri);
+		}
+
+		if (!resources.isEmpty() && random.nextDouble() < inverseLinkDensity) {
+			Resource linker = resources.get(random.nextInt(resources.size()));
+			linker.addProperty(model.createProperty(NS, "mentions"), node);
+		}
+		resources.add(node);
+
+		if (level == depth) return;
+
+		Property childPredicate = model.createProperty(NS, "child" + level);
+		for (int i = 0; i < branching; i++) {
+			if (!reference.isEmpty() && random.nextDouble() < sharedFraction) {
+				node.addProperty(childPredicate, reference.get(random.nextInt(reference.size())));
+			} else {
+				String childUri = uri + "/" + i;
+				Resource child = model.createResource(childUri);
+				node.addProperty(childPredicate, child);
+				addTree(model, random, child, childUri, level + 1, reference, resources);
+			}
+		}
+	}
+
+}
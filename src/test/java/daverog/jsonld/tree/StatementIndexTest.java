@@ -0,0 +1,102 @@
+package daverog.jsonld.tree;
+
+import com.google.common.collect.Lists;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StatementIndexTest {
+
+	private final Model model = ModelUtils.createJenaModel(
+			"<uri:a> <uri:b> <uri:c> .\n" +
+			"<uri:a> <uri:b> <uri:a> .\n" +
+			"<uri:a> a <uri:Type> .\n" +
+			"<uri:d> <uri:e> <uri:a> .\n" +
+			"<uri:d> <uri:e> \"literal\" .");
+	private final StatementIndex index = new StatementIndex(model);
+
+	@Test
+	public void statements_are_indexed_by_subject() {
+		assertEquals(3, index.getStatementsWithSubject(model.getResource("uri:a")).size());
+		assertEquals(2, index.getStatementsWithSubject(model.getResource("uri:d")).size());
+	}
+
+	@Test
+	public void inverse_statements_exclude_those_where_the_resource_is_also_the_subject() {
+		assertEquals(1, index.getInverseStatements(model.getResource("uri:a")).size());
+		assertEquals(model.getResource("uri:d"),
+				index.getInverseStatements(model.getResource("uri:a")).get(0).getSubject());
+	}
+
+	@Test
+	public void types_are_indexed_by_subject() {
+		assertEquals(1, index.getTypes(model.getResource("uri:a")).size());
+		assertEquals(model.getResource("uri:Type"), index.getTypes(model.getResource("uri:a")).get(0));
+		assertTrue(index.getTypes(model.getResource("uri:d")).isEmpty());
+	}
+
+	@Test
+	public void unknown_resources_have_no_statements() {
+		assertTrue(index.getStatementsWithSubject(model.getResource("uri:unknown")).isEmpty());
+		assertTrue(index.getInverseStatements(model.getResource("uri:unknown")).isEmpty());
+	}
+
+	@Test
+	public void the_statements_of_the_index_are_those_of_the_model_in_the_same_order() {
+		assertEquals(model.listStatements().toList(), Lists.newArrayList(index.listStatements()));
+		assertEquals(model.listStatements(model.getResource("uri:a"), null, (RDFNode) null).toList(),
+				index.getStatementsWithSubject(model.getResource("uri:a")));
+	}
+
+	@Test
+	public void a_literal_with_the_same_lexical_form_as_a_uri_is_a_different_term() {
+		StatementIndex parsed = StatementIndex.readTurtle(
+				"<uri:a> <uri:b> \"uri:c\" .\n" +
+				"<uri:a> <uri:b> <uri:c> .");
+		assertEquals(2, parsed.getStatementsWithSubject(parsed.getModel().getResource("uri:a")).size());
+		assertEquals(1, parsed.getInverseStatements(parsed.getModel().getResource("uri:c")).size());
+	}
+
+	@Test
+	public void an_index_read_from_turtle_holds_each_statement_once_and_the_prefixes() {
+		StatementIndex parsed = StatementIndex.readTurtle(
+				"@prefix ex: <http://example.com/> .\n" +
+				"ex:a ex:b ex:c .\n" +
+				"ex:a ex:b ex:c .\n" +
+				"ex:a a ex:Type .\n" +
+				"ex:d ex:e ex:a .");
+		Resource a = parsed.getModel().getResource("http://example.com/a");
+
+		assertEquals(2, parsed.getStatementsWithSubject(a).size());
+		assertEquals(1, parsed.getInverseStatements(a).size());
+		assertEquals(1, parsed.getTypes(a).size());
+		assertEquals("http://example.com/", parsed.getModel().getNsPrefixURI("ex"));
+		assertTrue(parsed.getModel().isEmpty());
+	}
+
+	@Test
+	public void statements_repeated_among_many_are_held_once() {
+		StringBuilder turtle = new StringBuilder();
+		for (int repeat = 0; repeat < 2; repeat++) {
+			for (int i = 0; i < 1000; i++) {
+				turtle.append("<uri:a> <uri:b").append(i % 7).append("> <uri:c").append(i).append("> .\n");
+			}
+		}
+		StatementIndex parsed = StatementIndex.readTurtle(turtle.toString());
+
+		assertEquals(1000, parsed.getStatementsWithSubject(parsed.getModel().getResource("uri:a")).size());
+		assertEquals(1000, Lists.newArrayList(parsed.listStatements()).size());
+	}
+
+	@Test
+	public void an_empty_document_gives_an_empty_index() {
+		assertTrue(StatementIndex.readTurtle("@prefix ex: <http://example.com/> .").isEmpty());
+		assertFalse(index.isEmpty());
+	}
+
+}
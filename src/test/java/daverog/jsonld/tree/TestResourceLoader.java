@@ -1,13 +1,23 @@
 package daverog.jsonld.tree;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 
+import com.google.common.collect.ImmutableList;
+import com.hp.hpl.jena.rdf.model.Model;
+
 public class TestResourceLoader {
 
+	/**
+	 * The fixtures that have the JSON expected of them
+	 */
+	public static final List<String> FIXTURES = ImmutableList.of("ben-ainslie", "athletes", "creative-works", "creativework");
+
 	public static String loadClasspathResourceAsString(String filename) {
 		try {
 			return IOUtils.toString(ClassLoader.getSystemResourceAsStream(filename), "UTF-8");
@@ -28,4 +38,25 @@ public class TestResourceLoader {
 		}
 	}
 
+	public static Model loadFixture(String fixture) {
+		return ModelUtils.createJenaModel(loadClasspathResourceAsString("fixtures/" + fixture + ".ttl"));
+	}
+
+	public static String loadFixtureJson(String fixture) {
+		return loadClasspathResourceAsString("fixtures/" + fixture + ".json");
+	}
+
+	/**
+	 * Asserts that the generator gives each of the fixtures the JSON expected of it
+	 */
+	public static void assertFixturesGiveTheirJson(RdfTreeGenerator generator) throws RdfTreeException {
+		assertFixturesGiveTheirJson(generator, FIXTURES);
+	}
+
+	public static void assertFixturesGiveTheirJson(RdfTreeGenerator generator, List<String> fixtures) throws RdfTreeException {
+		for (String fixture : fixtures) {
+			assertEquals("The JSON of " + fixture, loadFixtureJson(fixture), generator.generateRdfTree(loadFixture(fixture)).asJson());
+		}
+	}
+
 }
@@ -0,0 +1,92 @@
+package daverog.jsonld.tree;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.rdf.model.Model;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class VocabularyCacheTest {
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private final List<String> prioritisedNamespaces = Lists.newArrayList("http://prefix.com/");
+	private final Map<String, String> nameOverrides = Maps.newHashMap();
+	private final VocabularyCache cache = new VocabularyCache();
+
+	@Test
+	public void names_resolved_with_a_cached_vocabulary_are_the_same_as_without_one() {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix prfx: <http://prefix.com/> .\n" +
+				"@prefix other: <http://other.com/> .\n" +
+				"<uri:a> prfx:name <uri:c> .\n" +
+				"<uri:a> other:name prfx:thing .\n" +
+				"<uri:a> <uri:b> [ other:thing \"x\" ] .");
+		NameResolver uncached = new NameResolver(model, prioritisedNamespaces, nameOverrides, "");
+
+		for (int i = 0; i < 2; i++) {
+			NameResolver cached = cache.createNameResolver(model, prioritisedNamespaces, nameOverrides, "");
+			assertEquals(uncached.getMappedResources().keySet(), cached.getMappedResources().keySet());
+			for (String uri : Lists.newArrayList("http://prefix.com/name", "http://other.com/name", "http://prefix.com/thing", "uri:b")) {
+				assertEquals(uncached.getName(model.getResource(uri)), cached.getName(model.getResource(uri)));
+				assertEquals(uncached.getPrefixedName(model.getResource(uri)), cached.getPrefixedName(model.getResource(uri)));
+			}
+		}
+	}
+
+	@Test
+	public void a_vocabulary_is_shared_by_models_with_the_same_prefixes_and_settings() {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix prfx: <http://prefix.com/> .\n" +
+				"<uri:a> prfx:name <uri:c> .");
+		Model otherModel = ModelUtils.createJenaModel(
+				"@prefix prfx: <http://prefix.com/> .\n" +
+				"<uri:d> prfx:name <uri:e> .");
+
+		cache.createNameResolver(model, prioritisedNamespaces, nameOverrides, "");
+		cache.createNameResolver(otherModel, prioritisedNamespaces, nameOverrides, "");
+		assertEquals(1, cache.size());
+
+		cache.createNameResolver(otherModel, prioritisedNamespaces, ImmutableMap.of("http://prefix.com/name", "title"), "");
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void a_prefix_that_differs_between_models_is_not_shared() {
+		Model model = ModelUtils.createJenaModel(
+				"@prefix prfx: <http://prefix.com/> .\n" +
+				"<uri:a> prfx:name <uri:c> .");
+		Model otherModel = ModelUtils.createJenaModel(
+				"@prefix pfx: <http://prefix.com/> .\n" +
+				"<uri:a> pfx:name <uri:c> .");
+
+		assertEquals("prfx:name", cache.createNameResolver(model, prioritisedNamespaces, nameOverrides, "")
+				.getPrefixedName(model.getResource("http://prefix.com/name")));
+		assertEquals("pfx:name", cache.createNameResolver(otherModel, prioritisedNamespaces, nameOverrides, "")
+				.getPrefixedName(otherModel.getResource("http://prefix.com/name")));
+	}
+
+	@Test
+	public void two_uris_cannot_have_the_same_alias_in_a_cached_vocabulary() {
+		thrown.expect(IllegalArgumentException.class);
+		cache.createNameResolver(ModelUtils.createJenaModel(""), prioritisedNamespaces,
+				ImmutableMap.of("uri:a", "name", "uri:b", "name"), "");
+	}
+
+	@Test
+	public void trees_generated_with_a_vocabulary_cache_are_identical() throws RdfTreeException {
+		RdfTreeGenerator generator = new RdfTreeGenerator(RdfTreeGeneratorOptions.builder().vocabularyCache(cache).build());
+		TestResourceLoader.assertFixturesGiveTheirJson(generator);
+		// the second time, every vocabulary comes from the cache
+		TestResourceLoader.assertFixturesGiveTheirJson(generator);
+	}
+
+}
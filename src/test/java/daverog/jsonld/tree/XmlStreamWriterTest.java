@@ -0,0 +1,89 @@
+package daverog.jsonld.tree;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlStreamWriterTest {
+
+	private static final String[] TEXTS = {
+			"plain", "", "   ", "a<b>c&d\"e'f", "  lead  and   inner\n\nnew  ", "x\r\ny\tz",
+			"\u0001\u000b\u000c\u001f", "\u007f\u00e9\ud83d\ude00 ]]> x" };
+
+	@Test
+	public void text_and_attributes_are_escaped_and_trimmed_as_dom4j_does() throws IOException {
+		for (String text : TEXTS) {
+			assertSameAsDom4j(text, WriterOptions.DEFAULT);
+			assertSameAsDom4j(text, WriterOptions.COMPACT);
+			assertSameAsDom4j(text, WriterOptions.builder().indent("\t").build());
+		}
+	}
+
+	@Test
+	public void an_element_without_content_is_closed_in_its_start_tag() throws IOException {
+		StringWriter output = new StringWriter();
+		XmlStreamWriter xml = new XmlStreamWriter(output, WriterOptions.DEFAULT);
+		xml.startElement("a");
+		xml.attribute("b", "c");
+		xml.attribute("d", null);
+		xml.endElement();
+		assertEquals("<a b=\"c\"/>", output.toString());
+	}
+
+	private void assertSameAsDom4j(String text, WriterOptions options) throws IOException {
+		StringWriter output = new StringWriter();
+		XmlStreamWriter xml = new XmlStreamWriter(output, options);
+		xml.startElement("root");
+		xml.attribute("a", text);
+		xml.startElement("text");
+		xml.text(text);
+		xml.endElement();
+		xml.startElement("nested");
+		xml.startElement("empty");
+		xml.attribute("id", text);
+		xml.endElement();
+		xml.startElement("text");
+		xml.text(text);
+		xml.endElement();
+		xml.endElement();
+		xml.endElement();
+		xml.flush();
+
+		Document document = DocumentHelper.createDocument();
+		Element root = document.addElement("root");
+		root.addAttribute("a", text);
+		root.addElement("text").addText(text);
+		Element nested = root.addElement("nested");
+		nested.addElement("empty").addAttribute("id", text);
+		nested.addElement("text").addText(text);
+
+		assertEquals(writeWithDom4j(document, options), output.toString());
+	}
+
+	private String writeWithDom4j(Document document, WriterOptions options) throws IOException {
+		OutputFormat format;
+		if (options.isCompact()) {
+			format = OutputFormat.createCompactFormat();
+		} else {
+			format = OutputFormat.createPrettyPrint();
+			format.setIndent(options.getIndent());
+		}
+		format.setSuppressDeclaration(true);
+		format.setOmitEncoding(true);
+		format.setEncoding("UTF-8");
+		format.setNewLineAfterDeclaration(false);
+		format.setExpandEmptyElements(false);
+		StringWriter output = new StringWriter();
+		new XMLWriter(output, format).write(document);
+		return output.toString().trim();
+	}
+
+}